@@ -21,7 +21,7 @@ public abstract class MapEntity extends CustomBox implements CartesianPoint {
 	/** Entity name. */
 	protected String name;
 
-	/** Entity tooltip. */
+	/** Entity tooltip, installed once a viewer is attached. */
 	protected Tooltip tooltip;
 
 	/**
@@ -50,6 +50,15 @@ public abstract class MapEntity extends CustomBox implements CartesianPoint {
 				- (STARTING_DIMENSION - cellDimension.getHeight()) / 2;
 		this.setTranslateY(translateY);
 		this.name = name;
+	}
+
+	/**
+	 * Installs what only works once the entity is shown, like the tooltip.
+	 */
+	public void attachViewer() {
+		if (tooltip != null) {
+			return;
+		}
 		this.tooltip = new Tooltip();
 		this.tooltip.setText(name);
 		Tooltip.install(this, this.tooltip);
@@ -1,21 +1,29 @@
 package agentgame.entity.agent;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.Set;
 
 import agentgame.entity.Building;
 import agentgame.entity.MapEntity;
+import agentgame.grid.DiscoveryTable;
+import agentgame.grid.Grid;
+import agentgame.grid.GridStore;
 import agentgame.grid.MoveEnum;
+import agentgame.grid.PlanningBudget;
 import agentgame.grid.PositionTools;
+import agentgame.grid.SpatialHash;
 import agentgame.grid.cell.Cell;
+import agentgame.path.field.NavigationService;
 import agentgame.path.point.GridPoint;
-import agentgame.path.search.AstarSearch;
+import agentgame.path.search.AnytimePathFinder;
+import agentgame.path.search.CooperativeSearch;
+import agentgame.path.search.PathFinder;
+import agentgame.path.search.heuristic.ManhattanHeuristic;
 import javafx.animation.AnimationTimer;
 import javafx.event.EventHandler;
 import javafx.geometry.Dimension2D;
@@ -42,13 +50,62 @@ public class Agent extends MapEntity {
 
 	private final List<Character> targets;
 
-	private final Map<Character, Set<GridPoint>> knowledge;
+	/** The cells next to buildings the agent knows, its own or the blackboard. */
+	private final Knowledge knowledge;
 
+	/** What the agent found and was told, when it has its own knowledge. */
+	private final KnowledgeStore ownKnowledge;
+
+	/** Shows what the agent knows, filled only while it is visible. */
 	private final Group knowledgePoints;
 
 	private final Set<GridPoint> visited;
 
-	private final AstarSearch astar;
+	private final PathFinder pathFinder;
+
+	private final NavigationService navigation;
+
+	/** The state of the cells. */
+	private final GridStore store;
+
+	/** What can be found from every cell. */
+	private final DiscoveryTable discovery;
+
+	/** The steps up to which the agent sees buildings and meets agents. */
+	private final int perception;
+
+	/** The agents on the map by position. */
+	private final SpatialHash<Agent> agentHash;
+
+	/** The slot of the agent in the agent hash, -1 once it left the map. */
+	private int hashSlot;
+
+	/** The cells next to buildings by position. */
+	private final SpatialHash<GridPoint> discoveryCells;
+
+	/** The agents met by the last look around, kept to be filled again. */
+	private final List<Agent> nearbyAgents;
+
+	/** The cells next to buildings found by the last look around, kept to be filled again. */
+	private final List<GridPoint> nearbyCells;
+
+	/** The node expansions of the current tick, null if not limited. */
+	private final PlanningBudget planningBudget;
+
+	/** The remaining steps of the last planned path. */
+	private final Deque<GridPoint> plannedPath;
+
+	/** The target the planned path leads to. */
+	private Set<GridPoint> plannedTarget;
+
+	/**
+	 * The size of the target when the path was planned. Targets only grow,
+	 * so a larger size means a target cell was learned since.
+	 */
+	private int plannedTargetSize;
+
+	/** Whether the planned path only leads part way, to be searched on. */
+	private boolean planSuspended;
 
 	private double placeToBeX;
 
@@ -66,9 +123,58 @@ public class Agent extends MapEntity {
 
 	private int randomTrappedMoves;
 
-	public Agent(final int number, final Cell startingCell, final Dimension2D cellDimension) {
+	/** The seed of the random moves, to replay them after a reset. */
+	private final long seed;
+
+	/** Picks the random moves. */
+	private SplittableRandom random;
+
+	/** The move decided this tick, made on commit. */
+	private MoveEnum intent;
+
+	/** Whether the agent leaves the map on commit. */
+	private boolean leaving;
+
+	/** Whether the way was occupied when the agent decided this tick. */
+	private boolean blocked;
+
+	/**
+	 * Whether the last decision neither moved the agent nor changed anything
+	 * the next decision starts from.
+	 */
+	private boolean stalled;
+
+	/**
+	 * Instantiates a new agent.
+	 *
+	 * @param number
+	 *            the agent number
+	 * @param grid
+	 *            the grid
+	 * @param startingCell
+	 *            the cell of the agent's house
+	 * @param cellDimension
+	 *            the dimension of the agent
+	 * @param seed
+	 *            the seed of the agent's random moves
+	 */
+	public Agent(final int number, final Grid grid, final Cell startingCell, final Dimension2D cellDimension,
+			final long seed) {
 		super(AGENT_NAME + String.valueOf(number), startingCell.getY(), startingCell.getX(), DEPTH, cellDimension);
-		astar = new AstarSearch();
+		pathFinder = grid.getOptions().getPathFinder().create(grid);
+		navigation = grid.getNavigation();
+		store = grid.getStore();
+		discovery = grid.getDiscoveryTable();
+		perception = grid.getOptions().getPerception();
+		agentHash = grid.getAgentHash();
+		discoveryCells = grid.getDiscoveryCells();
+		nearbyAgents = new ArrayList<Agent>();
+		nearbyCells = new ArrayList<GridPoint>();
+		planningBudget = grid.getPlanningBudget();
+		plannedPath = new ArrayDeque<GridPoint>();
+		plannedTarget = null;
+		plannedTargetSize = 0;
+		planSuspended = false;
 		this.cellDimension = new Dimension2D(cellDimension.getWidth() * (1 / SLIM_FACTOR),
 				cellDimension.getHeight() * (1 / SLIM_FACTOR));
 		this.path = new Polyline();
@@ -78,29 +184,49 @@ public class Agent extends MapEntity {
 		this.path.setVisible(false);
 		this.currentCell = startingCell;
 		this.home = startingCell;
+		this.hashSlot = agentHash.insert(this, startingCell.getY(), startingCell.getX());
 		addPositionToPath();
-		this.knowledge = new HashMap<Character, Set<GridPoint>>();
+		this.ownKnowledge = new KnowledgeStore(grid);
+		this.knowledge = grid.getBlackboard() != null ? grid.getBlackboard() : ownKnowledge;
 		this.knowledgePoints = new Group();
 		this.knowledgePoints.setVisible(false);
 		this.visited = new HashSet<GridPoint>();
 		this.statistics = new AgentStatistics();
 
 		targets = new ArrayList<Character>();
-		installMouseFunction();
-		addMoveAnimation();
 		speed = 0.0;
 		isMoving = false;
 		this.finished = false;
 		this.randomTrappedMoves = 0;
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+		this.intent = null;
+		this.leaving = false;
+		this.blocked = false;
 		setInStartingPosition();
 	}
 
+	/**
+	 * Installs the tooltip, the mouse clicks and the move animation. Until
+	 * then the agent moves from cell to cell without animating.
+	 */
+	@Override
+	public void attachViewer() {
+		if (tooltip != null) {
+			return;
+		}
+		super.attachViewer();
+		installMouseFunction();
+		addMoveAnimation();
+	}
+
 	private void installMouseFunction() {
 		this.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			@Override
 			public void handle(final MouseEvent event) {
 				if (event.getButton().equals(MouseButton.PRIMARY)) {
 					knowledgePoints.setVisible(!knowledgePoints.isVisible());
+					showKnowledge();
 				} else if (event.getButton().equals(MouseButton.SECONDARY)) {
 					path.setVisible(!path.isVisible());
 				}
@@ -118,7 +244,6 @@ public class Agent extends MapEntity {
 					goToY();
 				} else if (isMoving) {
 					setMoving(false);
-					inspectPerimeter();
 				}
 			}
 		}.start();
@@ -176,63 +301,242 @@ public class Agent extends MapEntity {
 		return placeToBeY == getTranslateY();
 	}
 
-	private void inspectPerimeter() {
+	/**
+	 * Learns about the buildings within the perception radius and from the
+	 * agents within it. At radius 1 both are read from the discovery table,
+	 * the agents from the occupants of the neighbours that are not walls.
+	 * Further out the cells next to buildings and the agents are found with
+	 * range queries on the spatial hashes.
+	 */
+	public void inspectPerimeter() {
+		/* On the blackboard everything is shared already. */
+		final List<Agent> met = knowledge == ownKnowledge ? nearbyAgents : null;
+		if (perception > 1) {
+			perceiveInRange(perception, nearbyCells, met);
+		} else {
+			perceiveAround(nearbyCells, met);
+		}
+		for (int i = 0; i < nearbyCells.size(); i++) {
+			final GridPoint point = nearbyCells.get(i);
+			learnBuildingsNextTo(store.idOf(point.getY(), point.getX()), point);
+		}
+		if (met != null) {
+			for (int i = 0; i < met.size(); i++) {
+				knowledgeTransfer(met.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Finds what the agent perceives from the discovery table: its own cell
+	 * if it is next to an important building, and the agents on the
+	 * neighbours that are not walls. An agent in its house perceives nothing.
+	 *
+	 * @param cells
+	 *            emptied and filled with the cells next to buildings
+	 * @param agents
+	 *            emptied and filled with the agents met, may be null
+	 */
+	public void perceiveAround(final List<GridPoint> cells, final List<Agent> agents) {
+		cells.clear();
+		if (agents != null) {
+			agents.clear();
+		}
 		if (PositionTools.samePoint(currentCell, home)) {
 			return;
 		}
-		final List<GridPoint> allNeighbors = currentCell.getAllNeighboors();
-		for (final GridPoint point : allNeighbors) {
-			final MapEntity occupant = point.getOccupant();
-			if (occupant == null) {
-				continue;
-			}
-			if (occupant instanceof Building) {
-				examineBuilding((Building) occupant);
-			}
+		final int id = store.idOf(currentCell.getY(), currentCell.getX());
+		if (discovery.getIdentities(id) != 0) {
+			cells.add(currentCell);
+		}
+		if (agents == null) {
+			return;
+		}
+		int neighbors = discovery.getOpenMask(id);
+		while (neighbors != 0) {
+			final MoveEnum move = MoveEnum.lowestOf(neighbors);
+			neighbors &= neighbors - 1;
+			final MapEntity occupant = store.getOccupant(discovery.neighborOf(id, move));
 			if (occupant instanceof Agent) {
-				knowledgeTransfer((Agent) occupant);
+				agents.add((Agent) occupant);
 			}
 		}
 	}
 
-	private void examineBuilding(final Building building) {
-		if (!building.isImportant()) {
+	/**
+	 * Finds what the agent perceives within a radius with range queries on
+	 * the spatial hashes. A building is seen from up to the radius away, so
+	 * the cells next to it are found up to one step less. An agent in its
+	 * house perceives nothing and is not met.
+	 *
+	 * @param radius
+	 *            the perception radius
+	 * @param cells
+	 *            emptied and filled with the cells next to buildings
+	 * @param agents
+	 *            emptied and filled with the agents met, may be null
+	 */
+	public void perceiveInRange(final int radius, final List<GridPoint> cells, final List<Agent> agents) {
+		cells.clear();
+		if (agents != null) {
+			agents.clear();
+		}
+		if (PositionTools.samePoint(currentCell, home)) {
 			return;
 		}
-		addToKnowledge(building.getIdentity(), currentCell);
+		final int row = currentCell.getY();
+		final int column = currentCell.getX();
+		discoveryCells.query(row, column, radius - 1, cells);
+		if (agents == null) {
+			return;
+		}
+		agentHash.query(row, column, radius, agents);
+		int kept = 0;
+		for (int i = 0; i < agents.size(); i++) {
+			final Agent agent = agents.get(i);
+			if (agent != this && !PositionTools.samePoint(agent.currentCell, agent.home)) {
+				agents.set(kept, agent);
+				kept += 1;
+			}
+		}
+		for (int i = agents.size() - 1; i >= kept; i--) {
+			agents.remove(i);
+		}
+	}
+
+	/**
+	 * Learns a cell for every important building next to it.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @param point
+	 *            the cell
+	 */
+	private void learnBuildingsNextTo(final int id, final GridPoint point) {
+		for (int identities = discovery.getIdentities(id); identities != 0; identities >>>= 8) {
+			addToKnowledge((char) (identities & 0xFF), point);
+		}
 	}
 
 	private void knowledgeTransfer(final Agent agent) {
 		statistics.increaseKnowledgeTransfers();
-		for (final Map.Entry<Character, Set<GridPoint>> entry : agent.getKnowledge().entrySet()) {
-			final Character key = entry.getKey();
-			final Set<GridPoint> value = entry.getValue();
-			final Iterator<GridPoint> iterator = value.iterator();
-			while (iterator.hasNext()) {
-				addToKnowledge(key, iterator.next());
-			}
+		final int version = ownKnowledge.getVersion();
+		statistics.increaseDeltaPoints(ownKnowledge.sync(agent.ownKnowledge));
+		learned(ownKnowledge.getVersion() - version);
+	}
+
+	private void addToKnowledge(final char identity, final GridPoint point) {
+		if (knowledge.add(identity, point)) {
+			learned(1);
+		}
+	}
+
+	private void learned(final int points) {
+		if (points == 0) {
+			return;
+		}
+		statistics.increaseKnowledgePoints(points);
+		if (knowledgePoints.isVisible()) {
+			showKnowledge();
 		}
 	}
 
-	private void addToKnowledge(final Character ch, final GridPoint point) {
-		if (knowledge.get(ch) == null) {
-			knowledge.put(ch, new HashSet<GridPoint>());
+	/**
+	 * Draws the known points again, if they are shown.
+	 */
+	private void showKnowledge() {
+		knowledgePoints.getChildren().clear();
+		if (!knowledgePoints.isVisible()) {
+			return;
 		}
-		if (!knowledge.get(ch).contains(point)) {
-			knowledge.get(ch).add(point);
-			statistics.increaseKnowledgePoints();
-			final Rectangle known = new Rectangle(cellDimension.getWidth() / 4, cellDimension.getHeight() / 4);
-			known.setFill(Color.RED);
-			known.setTranslateX((point.getX() + 0.5) * cellDimension.getWidth());
-			known.setTranslateY((point.getY() + 0.5) * cellDimension.getHeight());
-			knowledgePoints.getChildren().add(known);
+		for (char identity = 0; identity <= 0xFF; identity++) {
+			final Set<GridPoint> known = knowledge.get(identity);
+			if (known == null) {
+				continue;
+			}
+			for (final GridPoint point : known) {
+				final Rectangle mark = new Rectangle(cellDimension.getWidth() / 4, cellDimension.getHeight() / 4);
+				mark.setFill(Color.RED);
+				mark.setTranslateX((point.getX() + 0.5) * cellDimension.getWidth());
+				mark.setTranslateY((point.getY() + 0.5) * cellDimension.getHeight());
+				knowledgePoints.getChildren().add(mark);
+			}
 		}
 	}
 
+	/**
+	 * Decides and makes the next move at once.
+	 */
 	public void findNextMove() {
+		decideMove();
+		/* Decided on the cells as they are, so being blocked is final. */
+		blocked = false;
+		commitMove();
+	}
+
+	/**
+	 * Decides the next move from the cells as they are, without changing
+	 * any of them, so every agent can decide at the same time.
+	 */
+	public void decideMove() {
+		intent = null;
+		blocked = false;
+		stalled = true;
+		statistics.startDecision();
 		if (!this.isVisible()) {
 			return;
 		}
+		decide();
+	}
+
+	/**
+	 * Decides and makes the next move again after committing the decided one
+	 * failed. The moves the failed decision counted are taken back, so an
+	 * agent counts one decision a tick however often it decided.
+	 */
+	public void decideAgain() {
+		statistics.undoDecision();
+		findNextMove();
+	}
+
+	/**
+	 * Makes the decided move, unless an agent that committed first claimed
+	 * the cell. An agent whose way was occupied when it decided stays put as
+	 * well, the agents before may have made way since.
+	 *
+	 * @return false, if the agent stayed put and should decide again
+	 */
+	public boolean commitMove() {
+		if (leaving) {
+			leaving = false;
+			stalled = false;
+			setVisible(false);
+			currentCell.clear();
+			agentHash.remove(hashSlot);
+			hashSlot = -1;
+			System.out.println(name + " " + statistics);
+			return true;
+		}
+		if (blocked) {
+			blocked = false;
+			intent = null;
+			return false;
+		}
+		if (intent == null) {
+			return true;
+		}
+		final MoveEnum move = intent;
+		intent = null;
+		if (inspectNeighboorByMove(move)) {
+			statistics.increaseLostClaims();
+			return false;
+		}
+		move(move);
+		stalled = false;
+		return true;
+	}
+
+	private void decide() {
 		Set<GridPoint> target = null;
 		if (isAtHome()) {
 			findNextRandomMove();
@@ -242,20 +546,20 @@ public class Agent extends MapEntity {
 			if (isAtTarget(target)) {
 				statistics.increaseTargetsFound();
 				targets.remove(0);
+				stalled = false;
 				if (finished) {
-					setVisible(false);
-					currentCell.clear();
-					System.out.println(name + " " + statistics);
+					/* Leaves the map on commit. */
+					leaving = true;
 					return;
 				}
 				if (isPlanFinished()) {
 					System.out.println(name + ": DONE!");
 					goHome();
 				} else {
-					findNextMove();
+					decide();
 				}
 			} else {
-				goToTarget(target);
+				goToTarget(targets.get(0));
 			}
 		} else {
 			findNextRandomMove();
@@ -272,7 +576,7 @@ public class Agent extends MapEntity {
 		final int homeNumber = agentNumber % 10;
 		targets.add(String.valueOf(homeNumber).charAt(0));
 		finished = true;
-		goToTarget(knowledge.get(targets.get(0)));
+		goToTarget(targets.get(0));
 	}
 
 	private boolean isPlanFinished() {
@@ -285,20 +589,151 @@ public class Agent extends MapEntity {
 
 	public boolean hasTarget() {
 		/* If targets is not empty and agent knows where to go. */
-		return targets.size() > 0 && knowledge.containsKey(targets.get(0));
+		return targets.size() > 0 && knowledge.knows(targets.get(0));
 	}
 
-	private void goToTarget(final Set<GridPoint> target) {
+	private void goToTarget(final Character identity) {
 		randomTrappedMoves = 0;
-		final MoveEnum nextMove = astar.search(currentCell, target);
+		final Set<GridPoint> target = knowledge.get(identity);
+		if (pathFinder instanceof CooperativeSearch) {
+			moveCooperatively(identity, target);
+			return;
+		}
+		final MoveEnum fieldMove = navigation.nextMove(identity, target, currentCell);
+		if (fieldMove != null) {
+			forgetPlan();
+			intent = fieldMove;
+			statistics.increaseFieldMoves();
+			return;
+		}
+		if (navigation.covers(identity, target)) {
+			/* Every step closer is occupied. */
+			blocked = true;
+		}
+		final MoveEnum nextMove = nextPlannedMove(target);
 		if (nextMove != null) {
-			move(nextMove);
+			intent = nextMove;
 			statistics.increaseAstarMoves();
+		} else if (planSuspended) {
+			/* The search goes on next tick before any step can be made. */
+			stalled = false;
+			return;
 		} else {
 			findNextRandomMove();
 			statistics.increaseBlockedMoves();
+			blocked = true;
+		}
+
+	}
+
+	/**
+	 * Takes the first step of a path planned again every tick around the
+	 * other agents' reservations. The step may be a wait.
+	 *
+	 * @param identity
+	 *            the building identity of the target
+	 * @param target
+	 *            the target
+	 */
+	private void moveCooperatively(final Character identity, final Set<GridPoint> target) {
+		final List<GridPoint> path = ((CooperativeSearch) pathFinder).searchPath(currentCell, identity, target);
+		if (path == null) {
+			findNextRandomMove();
+			statistics.increaseBlockedMoves();
+			return;
+		}
+		final GridPoint next = path.get(0);
+		if (PositionTools.samePoint(next, currentCell)) {
+			statistics.increaseWaits();
+			return;
+		}
+		intent = currentCell.getMoveByGridPoint(next);
+		statistics.increaseAstarMoves();
+	}
+
+	/**
+	 * Follows the planned path one step. A new path is planned only when there
+	 * is no usable one or its next cell got occupied.
+	 *
+	 * @param target
+	 *            the target
+	 * @return the next move, or null if the target cannot be reached
+	 */
+	private MoveEnum nextPlannedMove(final Set<GridPoint> target) {
+		if (isPlanValid(target)) {
+			final GridPoint next = plannedPath.peekFirst();
+			if (!next.isOccupied()) {
+				statistics.increasePathCacheHits();
+				plannedPath.removeFirst();
+				return currentCell.getMoveByGridPoint(next);
+			}
+			statistics.increaseReplans();
+			blocked = true;
+		} else {
+			statistics.increasePathCacheMisses();
 		}
+		plan(target);
+		if (plannedPath.isEmpty()) {
+			return null;
+		}
+		return currentCell.getMoveByGridPoint(plannedPath.removeFirst());
+	}
+
+	/**
+	 * Checks that the planned path still leads to the target from the current
+	 * cell. Only what the agent learned about this target matters, not what
+	 * it learned about the others.
+	 *
+	 * @param target
+	 *            the target
+	 * @return true, if the planned path can be followed
+	 */
+	private boolean isPlanValid(final Set<GridPoint> target) {
+		if (plannedPath.isEmpty() || planSuspended || plannedTarget != target
+				|| plannedTargetSize != target.size()) {
+			return false;
+		}
+		return ManhattanHeuristic.getDistance(currentCell, plannedPath.peekFirst()) == 1;
+	}
 
+	private void plan(final Set<GridPoint> target) {
+		forgetPlan();
+		final List<GridPoint> path = searchPath(target);
+		if (path == null) {
+			return;
+		}
+		plannedPath.addAll(path);
+		plannedTarget = target;
+		plannedTargetSize = target.size();
+	}
+
+	/**
+	 * Searches within this agent's share of the tick's planning budget, when
+	 * planning is limited and the path finder can be bounded. A suspended
+	 * search gives the way to the most promising cell found so far.
+	 *
+	 * @param target
+	 *            the target
+	 * @return the path, or null if there is none or it has no step yet
+	 */
+	private List<GridPoint> searchPath(final Set<GridPoint> target) {
+		if (planningBudget == null || !(pathFinder instanceof AnytimePathFinder)) {
+			return pathFinder.searchPath(currentCell, target);
+		}
+		final AnytimePathFinder anytime = (AnytimePathFinder) pathFinder;
+		final List<GridPoint> path = anytime.searchPath(currentCell, target, planningBudget.getShare());
+		planningBudget.spend(anytime.getSpentBudget());
+		planSuspended = anytime.isSuspended();
+		if (planSuspended) {
+			statistics.increasePartialPlans();
+		}
+		return path;
+	}
+
+	private void forgetPlan() {
+		plannedPath.clear();
+		plannedTarget = null;
+		planSuspended = false;
 	}
 
 	public void findNextRandomMove() {
@@ -307,27 +742,34 @@ public class Agent extends MapEntity {
 			randomTrappedMoves = 0;
 			System.out.println(name + ": Memory cleared.");
 		}
-		List<GridPoint> neighbors = currentCell.getEmptyNeighboors();
-		if (neighbors.size() == 0) {
+		final int neighbors = currentCell.getEmptyNeighborMask();
+		if (neighbors == 0) {
 			statistics.increaseBlockedMoves();
+			blocked = true;
 			return;
 		}
 		statistics.increaseRandomMoves();
-		final Random random = new Random();
-		neighbors = filterNeighborsByVisited(neighbors);
-		final MoveEnum move = currentCell.getMoveByGridPoint(neighbors.get(random.nextInt(neighbors.size())));
-		move(move);
+		forgetPlan();
+		int choices = filterNeighborsByVisited(neighbors);
+		/* Skip a random number of the choices left. */
+		for (int skip = random.nextInt(Integer.bitCount(choices)); skip > 0; skip--) {
+			choices &= choices - 1;
+		}
+		intent = MoveEnum.lowestOf(choices);
 	}
 
-	private List<GridPoint> filterNeighborsByVisited(final List<GridPoint> neighbors) {
-		final List<GridPoint> resultList = new ArrayList<GridPoint>();
-		for (final GridPoint point : neighbors) {
-			if (!visited.contains(point)) {
-				resultList.add(point);
+	private int filterNeighborsByVisited(final int neighbors) {
+		int result = 0;
+		int remaining = neighbors;
+		while (remaining != 0) {
+			final MoveEnum move = MoveEnum.lowestOf(remaining);
+			remaining &= remaining - 1;
+			if (!visited.contains(currentCell.getGridPointByMove(move))) {
+				result |= move.bit();
 			}
 		}
-		if (resultList.size() > 0) {
-			return resultList;
+		if (result != 0) {
+			return result;
 		} else {
 			randomTrappedMoves += 1;
 			return neighbors;
@@ -390,6 +832,19 @@ public class Agent extends MapEntity {
 
 	}
 
+	/**
+	 * Checks if the agent cannot move before one of the cells around it
+	 * changes: every one of them is taken and its last decision made no move
+	 * and changed nothing, so deciding again would do the same. An agent that
+	 * just arrived on its target or found it still has to decide.
+	 *
+	 * @return true, if successful
+	 */
+	public boolean isBoxedIn() {
+		return isVisible() && stalled && currentCell.getOccupant() == this
+				&& currentCell.getEmptyNeighborMask() == 0;
+	}
+
 	public boolean inspectNeighboorByMove(final MoveEnum move) {
 		final GridPoint point = currentCell.getGridPointByMove(move);
 		return point.isOccupied();
@@ -404,6 +859,7 @@ public class Agent extends MapEntity {
 		}
 		currentCell = currentCell.getGridPointByMove(move);
 		currentCell.setOccupant(this);
+		agentHash.move(hashSlot, currentCell.getY(), currentCell.getX());
 	}
 
 	private void setInStartingPosition() {
@@ -422,16 +878,27 @@ public class Agent extends MapEntity {
 		setInStartingPosition();
 		currentCell.clear();
 		currentCell = home;
+		if (hashSlot < 0) {
+			hashSlot = agentHash.insert(this, home.getY(), home.getX());
+		} else {
+			agentHash.move(hashSlot, home.getY(), home.getX());
+		}
 		path.getPoints().clear();
 		path.setVisible(false);
 		addPositionToPath();
 		targets.clear();
-		knowledge.clear();
+		ownKnowledge.clear();
 		knowledgePoints.getChildren().clear();
 		knowledgePoints.setVisible(false);
 		visited.clear();
 		statistics.reset();
 		randomTrappedMoves = 0;
+		random = new SplittableRandom(seed);
+		forgetPlan();
+		intent = null;
+		leaving = false;
+		blocked = false;
+		stalled = false;
 	}
 
 	public double getPlaceToBeX() {
@@ -493,7 +960,15 @@ public class Agent extends MapEntity {
 		}
 	}
 
-	public Map<Character, Set<GridPoint>> getKnowledge() {
+	public GridPoint getCurrentCell() {
+		return currentCell;
+	}
+
+	public GridPoint getHome() {
+		return home;
+	}
+
+	public Knowledge getKnowledge() {
 		return knowledge;
 	}
 
@@ -6,31 +6,62 @@ public class AgentStatistics {
 
 	private int knowledgePoints;
 
+	private int deltaPoints;
+
+	private int upToDateTransfers;
+
 	private int randomMoves;
 
 	private int astarMoves;
 
+	private int fieldMoves;
+
 	private int targetsFound;
 
 	private int blockedMoves;
 
+	private int pathCacheHits;
+
+	private int pathCacheMisses;
+
+	private int replans;
+
+	private int partialPlans;
+
+	private int waits;
+
+	private int lostClaims;
+
 	private long timeOnTheMove;
 
 	private long startTime;
 
 	private long stopTime;
 
+	/** The move counts before the last decision, to take it back. */
+	private final int[] movesBeforeDecision;
+
 	public AgentStatistics() {
+		movesBeforeDecision = new int[5];
 		reset();
 	}
 
 	public void reset() {
 		knowledgeTransfers = 0;
 		knowledgePoints = 0;
+		deltaPoints = 0;
+		upToDateTransfers = 0;
 		randomMoves = 0;
 		astarMoves = 0;
+		fieldMoves = 0;
 		targetsFound = 0;
 		blockedMoves = 0;
+		pathCacheHits = 0;
+		pathCacheMisses = 0;
+		replans = 0;
+		partialPlans = 0;
+		waits = 0;
+		lostClaims = 0;
 		timeOnTheMove = 0;
 	}
 
@@ -38,8 +69,21 @@ public class AgentStatistics {
 		knowledgeTransfers += 1;
 	}
 
-	public void increaseKnowledgePoints() {
-		knowledgePoints += 1;
+	public void increaseKnowledgePoints(final int points) {
+		knowledgePoints += points;
+	}
+
+	/**
+	 * Counts the size of the delta read in a knowledge transfer.
+	 *
+	 * @param points
+	 *            the entries read, 0 if both agents were up to date
+	 */
+	public void increaseDeltaPoints(final int points) {
+		deltaPoints += points;
+		if (points == 0) {
+			upToDateTransfers += 1;
+		}
 	}
 
 	public void increaseRandomMoves() {
@@ -50,6 +94,10 @@ public class AgentStatistics {
 		astarMoves += 1;
 	}
 
+	public void increaseFieldMoves() {
+		fieldMoves += 1;
+	}
+
 	public void increaseTargetsFound() {
 		targetsFound += 1;
 	}
@@ -58,6 +106,53 @@ public class AgentStatistics {
 		blockedMoves += 1;
 	}
 
+	public void increasePathCacheHits() {
+		pathCacheHits += 1;
+	}
+
+	public void increasePathCacheMisses() {
+		pathCacheMisses += 1;
+	}
+
+	public void increaseReplans() {
+		replans += 1;
+	}
+
+	public void increasePartialPlans() {
+		partialPlans += 1;
+	}
+
+	public void increaseWaits() {
+		waits += 1;
+	}
+
+	public void increaseLostClaims() {
+		lostClaims += 1;
+	}
+
+	/**
+	 * Remembers the move counts before a decision.
+	 */
+	public void startDecision() {
+		movesBeforeDecision[0] = randomMoves;
+		movesBeforeDecision[1] = astarMoves;
+		movesBeforeDecision[2] = fieldMoves;
+		movesBeforeDecision[3] = blockedMoves;
+		movesBeforeDecision[4] = waits;
+	}
+
+	/**
+	 * Takes back the moves counted since the last decision started, for a
+	 * decision that was not made.
+	 */
+	public void undoDecision() {
+		randomMoves = movesBeforeDecision[0];
+		astarMoves = movesBeforeDecision[1];
+		fieldMoves = movesBeforeDecision[2];
+		blockedMoves = movesBeforeDecision[3];
+		waits = movesBeforeDecision[4];
+	}
+
 	public void startWatch() {
 		startTime = System.currentTimeMillis();
 	}
@@ -67,6 +162,95 @@ public class AgentStatistics {
 		timeOnTheMove += stopTime - startTime;
 	}
 
+	/**
+	 * Adds the counts of another agent, to total a run.
+	 *
+	 * @param other
+	 *            the statistics of the other agent
+	 */
+	public void add(final AgentStatistics other) {
+		knowledgeTransfers += other.knowledgeTransfers;
+		knowledgePoints += other.knowledgePoints;
+		deltaPoints += other.deltaPoints;
+		upToDateTransfers += other.upToDateTransfers;
+		randomMoves += other.randomMoves;
+		astarMoves += other.astarMoves;
+		fieldMoves += other.fieldMoves;
+		targetsFound += other.targetsFound;
+		blockedMoves += other.blockedMoves;
+		pathCacheHits += other.pathCacheHits;
+		pathCacheMisses += other.pathCacheMisses;
+		replans += other.replans;
+		partialPlans += other.partialPlans;
+		waits += other.waits;
+		lostClaims += other.lostClaims;
+		timeOnTheMove += other.timeOnTheMove;
+	}
+
+	public int getKnowledgeTransfers() {
+		return knowledgeTransfers;
+	}
+
+	public int getKnowledgePoints() {
+		return knowledgePoints;
+	}
+
+	public int getDeltaPoints() {
+		return deltaPoints;
+	}
+
+	public int getUpToDateTransfers() {
+		return upToDateTransfers;
+	}
+
+	public int getRandomMoves() {
+		return randomMoves;
+	}
+
+	public int getAstarMoves() {
+		return astarMoves;
+	}
+
+	public int getFieldMoves() {
+		return fieldMoves;
+	}
+
+	public int getTargetsFound() {
+		return targetsFound;
+	}
+
+	public int getBlockedMoves() {
+		return blockedMoves;
+	}
+
+	public int getPathCacheHits() {
+		return pathCacheHits;
+	}
+
+	public int getPathCacheMisses() {
+		return pathCacheMisses;
+	}
+
+	public int getReplans() {
+		return replans;
+	}
+
+	public int getPartialPlans() {
+		return partialPlans;
+	}
+
+	public int getWaits() {
+		return waits;
+	}
+
+	public int getLostClaims() {
+		return lostClaims;
+	}
+
+	public long getTimeOnTheMove() {
+		return timeOnTheMove;
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder builder = new StringBuilder();
@@ -74,14 +258,32 @@ public class AgentStatistics {
 		builder.append(knowledgeTransfers);
 		builder.append(", knowledgePoints=");
 		builder.append(knowledgePoints);
+		builder.append(", deltaPoints=");
+		builder.append(deltaPoints);
+		builder.append(", upToDateTransfers=");
+		builder.append(upToDateTransfers);
 		builder.append(", randomMoves=");
 		builder.append(randomMoves);
 		builder.append(", astarMoves=");
 		builder.append(astarMoves);
+		builder.append(", fieldMoves=");
+		builder.append(fieldMoves);
 		builder.append(", targetsFound=");
 		builder.append(targetsFound);
 		builder.append(", blockedMoves=");
 		builder.append(blockedMoves);
+		builder.append(", pathCacheHits=");
+		builder.append(pathCacheHits);
+		builder.append(", pathCacheMisses=");
+		builder.append(pathCacheMisses);
+		builder.append(", replans=");
+		builder.append(replans);
+		builder.append(", partialPlans=");
+		builder.append(partialPlans);
+		builder.append(", waits=");
+		builder.append(waits);
+		builder.append(", lostClaims=");
+		builder.append(lostClaims);
 		builder.append(", timeOnTheMove=");
 		builder.append(timeOnTheMove);
 		builder.append("]");
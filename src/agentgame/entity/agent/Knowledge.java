@@ -0,0 +1,49 @@
+package agentgame.entity.agent;
+
+import java.util.Set;
+
+import agentgame.path.point.GridPoint;
+
+/**
+ * The cells next to buildings an agent knows, by building identity.
+ */
+public interface Knowledge {
+
+	/**
+	 * Adds a cell next to a building.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @param point
+	 *            the cell
+	 * @return true, if the cell was not known
+	 */
+	public boolean add(char identity, GridPoint point);
+
+	/**
+	 * Checks if any cell of an identity is known.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @return true, if successful
+	 */
+	public boolean knows(char identity);
+
+	/**
+	 * Gets the known cells of an identity. The set is the same one every
+	 * time and grows as more is known.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @return the known cells, or null if none is known
+	 */
+	public Set<GridPoint> get(char identity);
+
+	/**
+	 * Gets the version, which grows every time a cell is learned.
+	 *
+	 * @return the version
+	 */
+	public int getVersion();
+
+}
@@ -0,0 +1,248 @@
+package agentgame.entity.agent;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import agentgame.grid.Grid;
+import agentgame.grid.GridStore;
+import agentgame.path.point.GridPoint;
+
+/**
+ * What all agents know together, for runs where every discovery reaches
+ * every agent at once. Each building identity gets a bitset over the cell
+ * ids of the grid in an atomic long array, so agents publish with a
+ * compare-and-set on one word and never lock. Agents read the bitsets in
+ * place through a set view.
+ *
+ * The simulation publishes only while the agents look around and reads only
+ * while they decide, so what an agent decides on does not change under it.
+ */
+public class KnowledgeBlackboard implements Knowledge {
+
+	/** The number of identities, they fit in the identity layer's byte. */
+	private static final int IDENTITIES = 0x100;
+
+	/** The grid. */
+	private final Grid grid;
+
+	/** The known cells by identity, null until one is known. */
+	private final AtomicReferenceArray<Layer> layers;
+
+	/** The number of cells ever published. */
+	private final AtomicInteger version;
+
+	/**
+	 * Instantiates a new empty blackboard.
+	 *
+	 * @param grid
+	 *            the grid, with its store made
+	 */
+	public KnowledgeBlackboard(final Grid grid) {
+		this.grid = grid;
+		this.layers = new AtomicReferenceArray<Layer>(IDENTITIES);
+		this.version = new AtomicInteger();
+	}
+
+	/**
+	 * Publishes a cell next to a building.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @param point
+	 *            the cell
+	 * @return true, if the cell was not known
+	 */
+	@Override
+	public boolean add(final char identity, final GridPoint point) {
+		if (identity >= IDENTITIES) {
+			throw new IllegalArgumentException("No such building identity: " + identity);
+		}
+		final GridStore store = grid.getStore();
+		final int id = store.idOf(point.getY(), point.getX());
+		final Layer layer = layerOf(identity);
+		final int word = id >>> 6;
+		final long bit = 1L << id;
+		long bits;
+		do {
+			bits = layer.words.get(word);
+			if ((bits & bit) != 0) {
+				return false;
+			}
+		} while (!layer.words.compareAndSet(word, bits, bits | bit));
+		layer.cover(word);
+		layer.size.incrementAndGet();
+		version.incrementAndGet();
+		return true;
+	}
+
+	private Layer layerOf(final char identity) {
+		final Layer layer = layers.get(identity);
+		if (layer != null) {
+			return layer;
+		}
+		final Layer made = new Layer();
+		return layers.compareAndSet(identity, null, made) ? made : layers.get(identity);
+	}
+
+	@Override
+	public boolean knows(final char identity) {
+		if (identity >= IDENTITIES) {
+			return false;
+		}
+		final Layer layer = layers.get(identity);
+		return layer != null && layer.size.get() > 0;
+	}
+
+	@Override
+	public Set<GridPoint> get(final char identity) {
+		return knows(identity) ? layers.get(identity).view : null;
+	}
+
+	@Override
+	public int getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Forgets everything. The version keeps growing.
+	 */
+	public void clear() {
+		for (int identity = 0; identity < IDENTITIES; identity++) {
+			final Layer layer = layers.get(identity);
+			if (layer == null) {
+				continue;
+			}
+			for (int i = layer.firstWord.get(); i <= layer.lastWord.get(); i++) {
+				layer.words.set(i, 0L);
+			}
+			layer.size.set(0);
+			layer.firstWord.set(layer.words.length());
+			layer.lastWord.set(-1);
+		}
+		version.incrementAndGet();
+	}
+
+	/**
+	 * The bitset of one identity and its set view.
+	 */
+	private final class Layer {
+
+		/** The bits, cell id 64 * i + b at bit b of word i. */
+		private final AtomicLongArray words;
+
+		/** The number of cells set. */
+		private final AtomicInteger size;
+
+		/** The lowest word with a bit set, so reading skips the rest. */
+		private final AtomicInteger firstWord;
+
+		/** The highest word with a bit set. */
+		private final AtomicInteger lastWord;
+
+		/** Reads the bits in place. */
+		private final Set<GridPoint> view;
+
+		Layer() {
+			words = new AtomicLongArray((grid.getStore().getSize() + 63) >>> 6);
+			size = new AtomicInteger();
+			firstWord = new AtomicInteger(words.length());
+			lastWord = new AtomicInteger(-1);
+			view = new LayerView(this);
+		}
+
+		/**
+		 * Widens the words to read so they include one.
+		 *
+		 * @param word
+		 *            the word index
+		 */
+		void cover(final int word) {
+			int first;
+			while ((first = firstWord.get()) > word && !firstWord.compareAndSet(first, word)) {
+				/* Another agent moved it, look again. */
+			}
+			int last;
+			while ((last = lastWord.get()) < word && !lastWord.compareAndSet(last, word)) {
+				/* Another agent moved it, look again. */
+			}
+		}
+
+	}
+
+	/**
+	 * The cells of one identity, read straight from its bitset.
+	 */
+	private final class LayerView extends AbstractSet<GridPoint> {
+
+		private final Layer layer;
+
+		LayerView(final Layer layer) {
+			this.layer = layer;
+		}
+
+		@Override
+		public boolean contains(final Object object) {
+			if (!(object instanceof GridPoint)) {
+				return false;
+			}
+			final GridPoint point = (GridPoint) object;
+			final GridStore store = grid.getStore();
+			if (!store.contains(point.getY(), point.getX())) {
+				return false;
+			}
+			final int id = store.idOf(point.getY(), point.getX());
+			return (layer.words.get(id >>> 6) & 1L << id) != 0;
+		}
+
+		@Override
+		public int size() {
+			return layer.size.get();
+		}
+
+		@Override
+		public Iterator<GridPoint> iterator() {
+			return new Iterator<GridPoint>() {
+
+				/** The index of the word being read. */
+				private int index = layer.firstWord.get();
+
+				/** The index of the last word to read. */
+				private final int last = layer.lastWord.get();
+
+				/** The bits of that word not given yet. */
+				private long remaining = index <= last ? layer.words.get(index) : 0L;
+
+				@Override
+				public boolean hasNext() {
+					while (remaining == 0 && index < last) {
+						index += 1;
+						remaining = layer.words.get(index);
+					}
+					return remaining != 0;
+				}
+
+				@Override
+				public GridPoint next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					final int bit = Long.numberOfTrailingZeros(remaining);
+					remaining &= remaining - 1;
+					return grid.getCell((index << 6) + bit);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Cells are only published to the blackboard.");
+				}
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,40 @@
+package agentgame.entity.agent;
+
+/**
+ * The available ways for agents to share what they know, selectable per run.
+ */
+public enum KnowledgeMode {
+
+	/** Every agent knows what it found and what its neighbours told it. */
+	PEER("peer"),
+	/** Every agent knows what any agent found. */
+	BLACKBOARD("blackboard");
+
+	/** The name used on the command line. */
+	private final String optionName;
+
+	private KnowledgeMode(final String optionName) {
+		this.optionName = optionName;
+	}
+
+	public String getOptionName() {
+		return optionName;
+	}
+
+	/**
+	 * Gets the mode by its command line name.
+	 *
+	 * @param optionName
+	 *            the option name
+	 * @return the knowledge mode
+	 */
+	public static KnowledgeMode fromOptionName(final String optionName) {
+		for (final KnowledgeMode mode : values()) {
+			if (mode.optionName.equalsIgnoreCase(optionName.trim())) {
+				return mode;
+			}
+		}
+		throw new IllegalArgumentException("Unknown knowledge mode: " + optionName);
+	}
+
+}
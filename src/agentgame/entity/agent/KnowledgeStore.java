@@ -0,0 +1,206 @@
+package agentgame.entity.agent;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import agentgame.grid.Grid;
+import agentgame.grid.GridStore;
+import agentgame.grid.cell.CellSet;
+import agentgame.path.point.GridPoint;
+
+/**
+ * What an agent knows: for every building identity, the cells next to a
+ * building of that identity. Each identity keeps one cell set.
+ *
+ * Every cell learned is also appended to a log, and the version of the store
+ * is the number of cells ever appended. A store remembers the version it
+ * read every other store up to, so syncing again only reads what the other
+ * learned since and costs nothing when nothing changed. The first sync with
+ * a store adds its cell sets with a word-wise OR.
+ */
+public class KnowledgeStore implements Knowledge {
+
+	/** The number of identities, they fit in the identity layer's byte. */
+	private static final int IDENTITIES = 0x100;
+
+	/** The log entries held before the log grows. */
+	private static final int INITIAL_LOG = 64;
+
+	/** The grid. */
+	private final Grid grid;
+
+	/** The known cells by identity, null until one is known. */
+	private final CellSet[] sets;
+
+	/** The cells learned, identity in the high and cell id in the low half. */
+	private long[] log;
+
+	/** The number of entries in the log. */
+	private int logSize;
+
+	/** The version of the first log entry, the log restarts when cleared. */
+	private int logStart;
+
+	/** The version every other store was read up to. */
+	private final Map<KnowledgeStore, Integer> synced;
+
+	/** Appends what an OR adds to the log, for the identity being merged. */
+	private final LogAppender appender;
+
+	/**
+	 * Instantiates a new empty knowledge store.
+	 *
+	 * @param grid
+	 *            the grid
+	 */
+	public KnowledgeStore(final Grid grid) {
+		this.grid = grid;
+		this.sets = new CellSet[IDENTITIES];
+		this.log = new long[INITIAL_LOG];
+		this.logSize = 0;
+		this.logStart = 0;
+		this.synced = new IdentityHashMap<KnowledgeStore, Integer>();
+		this.appender = new LogAppender();
+	}
+
+	/**
+	 * Adds a cell next to a building.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @param point
+	 *            the cell
+	 * @return true, if the cell was not known
+	 */
+	@Override
+	public boolean add(final char identity, final GridPoint point) {
+		final GridStore store = grid.getStore();
+		return add(identity, store.idOf(point.getY(), point.getX()));
+	}
+
+	private boolean add(final char identity, final int id) {
+		if (identity >= IDENTITIES) {
+			throw new IllegalArgumentException("No such building identity: " + identity);
+		}
+		if (!setOf(identity).addCell(id)) {
+			return false;
+		}
+		append(identity, id);
+		return true;
+	}
+
+	private CellSet setOf(final char identity) {
+		if (sets[identity] == null) {
+			sets[identity] = new CellSet(grid);
+		}
+		return sets[identity];
+	}
+
+	private void append(final char identity, final int id) {
+		if (logSize == log.length) {
+			log = Arrays.copyOf(log, log.length * 2);
+		}
+		log[logSize] = (long) identity << 32 | id & 0xFFFFFFFFL;
+		logSize += 1;
+	}
+
+	/**
+	 * Adds what another store learned since the last sync with it.
+	 *
+	 * @param other
+	 *            the knowledge of the other agent
+	 * @return the number of entries read, the size of the delta
+	 */
+	public int sync(final KnowledgeStore other) {
+		final Integer seen = synced.get(other);
+		final int version = other.getVersion();
+		final int from = seen == null ? other.logStart : Math.max(seen, other.logStart);
+		if (from == version) {
+			return 0;
+		}
+		if (seen == null) {
+			for (int identity = 0; identity < IDENTITIES; identity++) {
+				final CellSet theirs = other.sets[identity];
+				if (theirs == null || theirs.isEmpty()) {
+					continue;
+				}
+				appender.identity = (char) identity;
+				setOf((char) identity).or(theirs, appender);
+			}
+		} else {
+			for (int at = from - other.logStart; at < other.logSize; at++) {
+				final long entry = other.log[at];
+				add((char) (entry >>> 32), (int) entry);
+			}
+		}
+		synced.put(other, version);
+		return version - from;
+	}
+
+	/**
+	 * Gets the version, the number of cells ever learned. It only grows, also
+	 * when the store is cleared.
+	 *
+	 * @return the version
+	 */
+	@Override
+	public int getVersion() {
+		return logStart + logSize;
+	}
+
+	/**
+	 * Checks if any cell of an identity is known.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @return true, if successful
+	 */
+	@Override
+	public boolean knows(final char identity) {
+		return identity < IDENTITIES && sets[identity] != null && !sets[identity].isEmpty();
+	}
+
+	/**
+	 * Gets the known cells of an identity. The set is the same one as long
+	 * as the store lives and grows as the agent learns.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @return the known cells, or null if none is known
+	 */
+	@Override
+	public CellSet get(final char identity) {
+		return knows(identity) ? sets[identity] : null;
+	}
+
+	/**
+	 * Forgets everything, also how far the other stores were read.
+	 */
+	public void clear() {
+		for (final CellSet set : sets) {
+			if (set != null) {
+				set.clear();
+			}
+		}
+		logStart += logSize;
+		logSize = 0;
+		synced.clear();
+	}
+
+	/**
+	 * Appends the cells an OR adds to the log.
+	 */
+	private final class LogAppender implements CellSet.Listener {
+
+		/** The identity being merged. */
+		private char identity;
+
+		@Override
+		public void cellAdded(final int id) {
+			append(identity, id);
+		}
+
+	}
+
+}
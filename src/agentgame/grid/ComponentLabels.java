@@ -0,0 +1,198 @@
+package agentgame.grid;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+import agentgame.grid.cell.Cell;
+import agentgame.path.point.GridPoint;
+
+/**
+ * Labels the connected components of the static map. Two reachable cells get
+ * the same label when one can be walked to from the other, agents ignored, so
+ * a search between different labels is known to fail before it starts.
+ *
+ * When a cell turns reachable again its component is flooded with a new label,
+ * joining the components it touches. When a cell turns unreachable the
+ * components around it are flooded again, since it may have split them.
+ */
+public class ComponentLabels implements StaticMapListener {
+
+	/** The label of an unreachable cell. */
+	public static final int NO_COMPONENT = -1;
+
+	/** Row offsets of the four neighbours: left, right, up, down. */
+	private static final int[] ROW_OFFSETS = { 0, 0, -1, 1 };
+
+	/** Column offsets of the four neighbours: left, right, up, down. */
+	private static final int[] COLUMN_OFFSETS = { -1, 1, 0, 0 };
+
+	/** The state of the cells. */
+	private final GridStore store;
+
+	private final int rows;
+
+	private final int columns;
+
+	/** The label of every cell, indexed by row * columns + column. */
+	private final int[] labels;
+
+	/** The flood queue. */
+	private final int[] queue;
+
+	/** The label the next flood gets. */
+	private int nextLabel;
+
+	/**
+	 * Instantiates new component labels and labels the whole map.
+	 *
+	 * @param store
+	 *            the state of the parsed cells
+	 */
+	public ComponentLabels(final GridStore store) {
+		this.store = store;
+		this.rows = store.getRows();
+		this.columns = store.getColumns();
+		labels = new int[rows * columns];
+		queue = new int[rows * columns];
+		nextLabel = 0;
+		Arrays.fill(labels, NO_COMPONENT);
+		for (int cell = 0; cell < labels.length; cell++) {
+			if (labels[cell] == NO_COMPONENT && isReachable(cell / columns, cell % columns)) {
+				flood(cell);
+			}
+		}
+	}
+
+	/**
+	 * Gives a new label to every reachable cell connected to a cell.
+	 *
+	 * @param from
+	 *            the cell index
+	 */
+	private void flood(final int from) {
+		final int label = nextLabel++;
+		int head = 0;
+		int tail = 0;
+		labels[from] = label;
+		queue[tail++] = from;
+		while (head < tail) {
+			final int current = queue[head++];
+			final int row = current / columns;
+			final int column = current % columns;
+			for (int i = 0; i < ROW_OFFSETS.length; i++) {
+				final int neighborRow = row + ROW_OFFSETS[i];
+				final int neighborColumn = column + COLUMN_OFFSETS[i];
+				if (!isReachable(neighborRow, neighborColumn)) {
+					continue;
+				}
+				final int neighbor = neighborRow * columns + neighborColumn;
+				if (labels[neighbor] != label) {
+					labels[neighbor] = label;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the label of a cell.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return the label, or NO_COMPONENT
+	 */
+	public int getComponent(final int row, final int column) {
+		return labels[row * columns + column];
+	}
+
+	/**
+	 * Checks whether a point can walk to another point on the static map. A
+	 * starting point that is itself unreachable, like an agent's home, walks
+	 * out through its reachable neighbours. Unreachable destinations are never
+	 * reached.
+	 *
+	 * @param from
+	 *            the starting point
+	 * @param to
+	 *            the destination
+	 * @return true, if successful
+	 */
+	public boolean isConnected(final GridPoint from, final GridPoint to) {
+		final int label = labels[to.getY() * columns + to.getX()];
+		if (label == NO_COMPONENT) {
+			return false;
+		}
+		final int row = from.getY();
+		final int column = from.getX();
+		if (labels[row * columns + column] == label) {
+			return true;
+		}
+		if (isReachable(row, column)) {
+			return false;
+		}
+		for (int i = 0; i < ROW_OFFSETS.length; i++) {
+			final int neighborRow = row + ROW_OFFSETS[i];
+			final int neighborColumn = column + COLUMN_OFFSETS[i];
+			if (isReachable(neighborRow, neighborColumn)
+					&& labels[neighborRow * columns + neighborColumn] == label) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether a point can walk to any of the target points on the
+	 * static map.
+	 *
+	 * @param from
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 * @return true, if successful
+	 */
+	public boolean canReach(final GridPoint from, final Set<GridPoint> target) {
+		final Iterator<GridPoint> iterator = target.iterator();
+		while (iterator.hasNext()) {
+			if (isConnected(from, iterator.next())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isReachable(final int row, final int column) {
+		return store.contains(row, column) && !store.isWall(row * columns + column);
+	}
+
+	/**
+	 * Floods the components touching the changed cell again.
+	 */
+	@Override
+	public void staticCellChanged(final Cell cell) {
+		final int row = cell.getY();
+		final int column = cell.getX();
+		if (!cell.isUnreachable()) {
+			flood(row * columns + column);
+			return;
+		}
+		labels[row * columns + column] = NO_COMPONENT;
+		final int floodedFrom = nextLabel;
+		for (int i = 0; i < ROW_OFFSETS.length; i++) {
+			final int neighborRow = row + ROW_OFFSETS[i];
+			final int neighborColumn = column + COLUMN_OFFSETS[i];
+			if (!isReachable(neighborRow, neighborColumn)) {
+				continue;
+			}
+			final int neighbor = neighborRow * columns + neighborColumn;
+			/* Neighbours still connected were flooded with an earlier one. */
+			if (labels[neighbor] < floodedFrom) {
+				flood(neighbor);
+			}
+		}
+	}
+
+}
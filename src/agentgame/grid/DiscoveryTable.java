@@ -0,0 +1,175 @@
+package agentgame.grid;
+
+import agentgame.grid.cell.Cell;
+
+/**
+ * What an agent can find from every cell, worked out when the map is parsed.
+ * Buildings never move, so for every cell the table holds the identities of
+ * the important buildings next to it and the neighbours that are not walls,
+ * the only cells another agent can stand on. When a cell turns unreachable
+ * or reachable again the cells around it are worked out again.
+ *
+ * Looking around is then one lookup for the buildings and a look at the
+ * occupant of each open neighbour for the agents, without creating anything.
+ */
+public class DiscoveryTable implements StaticMapListener {
+
+	/** The bits of one identity in a packed entry. */
+	private static final int IDENTITY_BITS = 8;
+
+	/** The state of the cells. */
+	private final GridStore store;
+
+	private final int columns;
+
+	/**
+	 * The different important identities next to every cell, one per byte
+	 * from the lowest, NO_IDENTITY after the last.
+	 */
+	private final int[] identities;
+
+	/** The neighbours of every cell that are not walls, as a neighbour mask. */
+	private final byte[] openMasks;
+
+	/**
+	 * Instantiates a new discovery table for a parsed map.
+	 *
+	 * @param store
+	 *            the state of the parsed cells
+	 */
+	public DiscoveryTable(final GridStore store) {
+		this.store = store;
+		this.columns = store.getColumns();
+		identities = new int[store.getSize()];
+		openMasks = new byte[store.getSize()];
+		for (int row = 0; row < store.getRows(); row++) {
+			for (int column = 0; column < columns; column++) {
+				fill(row, column);
+			}
+		}
+	}
+
+	/**
+	 * Works out the entry of one cell.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 */
+	private void fill(final int row, final int column) {
+		int packed = 0;
+		int mask = 0;
+		for (final MoveEnum move : MoveEnum.values()) {
+			final int neighborRow = row + rowOffsetOf(move);
+			final int neighborColumn = column + columnOffsetOf(move);
+			if (!store.contains(neighborRow, neighborColumn)) {
+				continue;
+			}
+			final int neighbor = store.idOf(neighborRow, neighborColumn);
+			packed = withIdentity(packed, store.getIdentity(neighbor));
+			if (!store.isWall(neighbor)) {
+				mask |= move.bit();
+			}
+		}
+		final int id = store.idOf(row, column);
+		identities[id] = packed;
+		openMasks[id] = (byte) mask;
+	}
+
+	/**
+	 * Works out the cells around a changed cell again.
+	 */
+	@Override
+	public void staticCellChanged(final Cell cell) {
+		for (final MoveEnum move : MoveEnum.values()) {
+			final int row = cell.getY() + rowOffsetOf(move);
+			final int column = cell.getX() + columnOffsetOf(move);
+			if (store.contains(row, column)) {
+				fill(row, column);
+			}
+		}
+	}
+
+	/**
+	 * Adds an identity to a packed entry, unless it is there already.
+	 *
+	 * @param packed
+	 *            the packed identities
+	 * @param identity
+	 *            the identity, or NO_IDENTITY
+	 * @return the packed identities
+	 */
+	private static int withIdentity(final int packed, final char identity) {
+		if (identity == GridStore.NO_IDENTITY) {
+			return packed;
+		}
+		int shift = 0;
+		for (int rest = packed; rest != 0; rest >>>= IDENTITY_BITS) {
+			if ((rest & 0xFF) == identity) {
+				return packed;
+			}
+			shift += IDENTITY_BITS;
+		}
+		return packed | identity << shift;
+	}
+
+	private static int rowOffsetOf(final MoveEnum move) {
+		switch (move) {
+		case UP:
+			return -1;
+		case DOWN:
+			return 1;
+		default:
+			return 0;
+		}
+	}
+
+	private static int columnOffsetOf(final MoveEnum move) {
+		switch (move) {
+		case LEFT:
+			return -1;
+		case RIGHT:
+			return 1;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Gets the important identities next to a cell. Read them a byte at a
+	 * time from the lowest until the rest is 0.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @return the packed identities, 0 if there are none
+	 */
+	public int getIdentities(final int id) {
+		return identities[id];
+	}
+
+	/**
+	 * Gets the neighbours of a cell another agent can stand on.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @return the neighbour mask
+	 */
+	public int getOpenMask(final int id) {
+		return openMasks[id];
+	}
+
+	/**
+	 * Gets the id of a neighbour of a cell, which must be on the map.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @param move
+	 *            the move to the neighbour
+	 * @return the neighbour's cell id
+	 */
+	public int neighborOf(final int id, final MoveEnum move) {
+		return id + rowOffsetOf(move) * columns + columnOffsetOf(move);
+	}
+
+}
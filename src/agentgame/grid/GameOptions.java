@@ -0,0 +1,223 @@
+package agentgame.grid;
+
+import java.util.Map;
+
+import agentgame.entity.agent.KnowledgeMode;
+import agentgame.path.search.PathFinderType;
+import agentgame.path.search.heuristic.HeuristicType;
+
+/**
+ * Holds the settings of a run. They are given on the command line as
+ * --name=value.
+ */
+public class GameOptions {
+
+	/** The name of the path finder option. */
+	public static final String PATH_FINDER = "pathfinder";
+
+	/** The name of the heuristic option. */
+	public static final String HEURISTIC = "heuristic";
+
+	/** The name of the planning budget option. */
+	public static final String PLANNING_BUDGET = "budget";
+
+	/** The name of the storage option. */
+	public static final String STORAGE = "storage";
+
+	/** The name of the decision threads option. */
+	public static final String THREADS = "threads";
+
+	/** The name of the random seed option. */
+	public static final String SEED = "seed";
+
+	/** The name of the knowledge sharing option. */
+	public static final String KNOWLEDGE = "knowledge";
+
+	/** The name of the perception radius option. */
+	public static final String PERCEPTION = "perception";
+
+	/** The name of the option to read the map layers from a binary map file. */
+	public static final String BINARY_MAP = "binarymap";
+
+	/** The name of the option to write the map layers to a binary map file. */
+	public static final String SAVE_MAP = "savemap";
+
+	/** The path finder the agents plan with. */
+	private PathFinderType pathFinder;
+
+	/** The heuristic the searches estimate with. */
+	private HeuristicType heuristic;
+
+	/** The node expansions all agents may spend per tick, 0 for no limit. */
+	private int planningBudget;
+
+	/** Where the grid store keeps its layers. */
+	private StorageType storage;
+
+	/** The threads the agents decide their moves on, 1 to decide in turn. */
+	private int threads;
+
+	/** The seed of the run, null to take the agent file's or a random one. */
+	private Long seed;
+
+	/** How the agents share what they know. */
+	private KnowledgeMode knowledge;
+
+	/** The steps up to which agents see buildings and meet other agents. */
+	private int perception;
+
+	/** The binary map file the layers are mapped from, null to read the map rows. */
+	private String binaryMap;
+
+	/** The binary map file the parsed layers are written to, null for none. */
+	private String saveMap;
+
+	/**
+	 * Instantiates the default options.
+	 */
+	public GameOptions() {
+		pathFinder = PathFinderType.ASTAR;
+		heuristic = HeuristicType.MANHATTAN;
+		planningBudget = 0;
+		storage = StorageType.HEAP;
+		threads = 1;
+		seed = null;
+		knowledge = KnowledgeMode.PEER;
+		perception = 1;
+		binaryMap = null;
+		saveMap = null;
+	}
+
+	/**
+	 * Reads the options from the named command line parameters. Missing
+	 * options keep their default.
+	 *
+	 * @param parameters
+	 *            the named parameters
+	 * @return the options
+	 */
+	public static GameOptions fromNamedParameters(final Map<String, String> parameters) {
+		final GameOptions options = new GameOptions();
+		if (parameters.containsKey(PATH_FINDER)) {
+			options.setPathFinder(PathFinderType.fromOptionName(parameters.get(PATH_FINDER)));
+		}
+		if (parameters.containsKey(HEURISTIC)) {
+			options.setHeuristic(HeuristicType.fromOptionName(parameters.get(HEURISTIC)));
+		}
+		if (parameters.containsKey(PLANNING_BUDGET)) {
+			options.setPlanningBudget(Integer.parseInt(parameters.get(PLANNING_BUDGET).trim()));
+		}
+		if (parameters.containsKey(STORAGE)) {
+			options.setStorage(StorageType.fromOptionName(parameters.get(STORAGE)));
+		}
+		if (parameters.containsKey(THREADS)) {
+			options.setThreads(Integer.parseInt(parameters.get(THREADS).trim()));
+		}
+		if (parameters.containsKey(SEED)) {
+			options.setSeed(Long.valueOf(parameters.get(SEED).trim()));
+		}
+		if (parameters.containsKey(KNOWLEDGE)) {
+			options.setKnowledge(KnowledgeMode.fromOptionName(parameters.get(KNOWLEDGE)));
+		}
+		if (parameters.containsKey(PERCEPTION)) {
+			options.setPerception(Integer.parseInt(parameters.get(PERCEPTION).trim()));
+		}
+		if (parameters.containsKey(BINARY_MAP)) {
+			options.setBinaryMap(parameters.get(BINARY_MAP).trim());
+		}
+		if (parameters.containsKey(SAVE_MAP)) {
+			options.setSaveMap(parameters.get(SAVE_MAP).trim());
+		}
+		return options;
+	}
+
+	public PathFinderType getPathFinder() {
+		return pathFinder;
+	}
+
+	public void setPathFinder(final PathFinderType pathFinder) {
+		this.pathFinder = pathFinder;
+	}
+
+	public HeuristicType getHeuristic() {
+		return heuristic;
+	}
+
+	public void setHeuristic(final HeuristicType heuristic) {
+		this.heuristic = heuristic;
+	}
+
+	public int getPlanningBudget() {
+		return planningBudget;
+	}
+
+	public void setPlanningBudget(final int planningBudget) {
+		if (planningBudget < 0) {
+			throw new IllegalArgumentException("The planning budget cannot be negative: " + planningBudget);
+		}
+		this.planningBudget = planningBudget;
+	}
+
+	public StorageType getStorage() {
+		return storage;
+	}
+
+	public void setStorage(final StorageType storage) {
+		this.storage = storage;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	public Long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(final Long seed) {
+		this.seed = seed;
+	}
+
+	public KnowledgeMode getKnowledge() {
+		return knowledge;
+	}
+
+	public void setKnowledge(final KnowledgeMode knowledge) {
+		this.knowledge = knowledge;
+	}
+
+	public int getPerception() {
+		return perception;
+	}
+
+	public void setPerception(final int perception) {
+		if (perception < 1) {
+			throw new IllegalArgumentException("The perception radius must be at least 1: " + perception);
+		}
+		this.perception = perception;
+	}
+
+	public String getBinaryMap() {
+		return binaryMap;
+	}
+
+	public void setBinaryMap(final String binaryMap) {
+		this.binaryMap = binaryMap;
+	}
+
+	public String getSaveMap() {
+		return saveMap;
+	}
+
+	public void setSaveMap(final String saveMap) {
+		this.saveMap = saveMap;
+	}
+
+}
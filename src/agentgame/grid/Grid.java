@@ -1,16 +1,31 @@
 package agentgame.grid;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import agentgame.entity.Building;
+import agentgame.entity.MapEntity;
 import agentgame.entity.agent.Agent;
+import agentgame.entity.agent.KnowledgeBlackboard;
+import agentgame.entity.agent.KnowledgeMode;
 import agentgame.grid.cell.Cell;
 import agentgame.parser.AgentParser;
 import agentgame.parser.MapParser;
+import agentgame.path.field.NavigationService;
 import agentgame.path.point.GridPoint;
+import agentgame.path.search.AstarSearch;
+import agentgame.path.search.ClusterGraph;
+import agentgame.path.search.CooperativeSearch;
+import agentgame.path.search.PathFinderType;
+import agentgame.path.search.heuristic.Heuristic;
+import agentgame.simulation.SimulationEngine;
 import agentgame.window.AgentGame;
 import javafx.animation.AnimationTimer;
 import javafx.event.EventHandler;
@@ -23,6 +38,10 @@ import javafx.scene.shape.Line;
 /**
  * Represents all the visible world of the game. Holds the map and all its
  * entities.
+ *
+ * The grid runs without a viewer: its {@link SimulationEngine} ticks the game
+ * on demand. Once a viewer is attached the nodes are shown and the engine is
+ * ticked whenever the agents finished animating the previous tick.
  */
 public final class Grid {
 
@@ -32,7 +51,17 @@ public final class Grid {
 
 	private static final float MIN_SPEED = 0.2f;
 
-	private final AgentGame game;
+	/** The viewer, null while running headless. */
+	private AgentGame game;
+
+	/** The nodes to show, added to the viewer's pane once attached. */
+	private final List<Node> children;
+
+	/** Runs the game tick by tick. */
+	private SimulationEngine engine;
+
+	/** The settings of the run. */
+	private final GameOptions options;
 
 	/** The grid rows. */
 	private int rows;
@@ -47,8 +76,11 @@ public final class Grid {
 	/** The grid's cell dimension. */
 	private Dimension2D cellDimension;
 
-	/** The cells. */
-	private final List<List<Cell>> cells;
+	/** The state of every cell, created by the map parser. */
+	private GridStore store;
+
+	/** The cells made so far, by tile of the store then slot. */
+	private Cell[][] cellTiles;
 
 	/** The agents. */
 	private final List<Agent> agents;
@@ -64,37 +96,189 @@ public final class Grid {
 
 	private final List<String> agentLines;
 
+	/** The seed the agents' random moves derive from, set by the agent parser. */
+	private long seed;
+
+	/** Notified when a cell turns unreachable or reachable again. */
+	private final List<StaticMapListener> staticMapListeners;
+
+	/** The shared distance fields. */
+	private final NavigationService navigation;
+
+	/** The cells whose free or occupied state changed. */
+	private final OccupancyLog occupancyLog;
+
+	/** The number of times the static map changed. */
+	private int staticChanges;
+
+	/** The connected components of the static map, set by the map parser. */
+	private ComponentLabels componentLabels;
+
+	/** What agents find from every cell, set by the map parser. */
+	private DiscoveryTable discoveryTable;
+
+	/** The heuristic the searches estimate with. */
+	private Heuristic heuristic;
+
+	/** The node expansions of a tick, null if planning is not limited. */
+	private final PlanningBudget planningBudget;
+
+	/** The reservations of the cooperative planners, if selected. */
+	private ReservationTable reservations;
+
+	/**
+	 * The A* search the cooperative planners share for their routes. They
+	 * plan in turn, so one is enough.
+	 */
+	private AstarSearch routeSearch;
+
+	/** The abstraction used by hierarchical path finding, if selected. */
+	private ClusterGraph clusterGraph;
+
+	/** What all agents know together, null when they share with neighbours. */
+	private KnowledgeBlackboard blackboard;
+
+	/** The agents on the map by position. */
+	private SpatialHash<Agent> agentHash;
+
+	/**
+	 * The cells next to important buildings by position, to see buildings
+	 * further than the cells around.
+	 */
+	private SpatialHash<GridPoint> discoveryCells;
+
+	/** The slot of every cell in the discovery cells, or -1. */
+	private int[] discoverySlots;
+
 	/**
 	 * Instantiates a new grid.
 	 *
-	 * @param pane
-	 *            the pane
-	 * @param size
-	 *            grid size in pixels
-	 * @param lines
-	 *            the parsed lines from the given file
+	 * @param mapLines
+	 *            the parsed lines of the map file
+	 * @param agentLines
+	 *            the parsed lines of the agent file
+	 * @param options
+	 *            the settings of the run
 	 */
-	public Grid(final AgentGame game, final List<String> mapLines, final List<String> agentLines) {
+	public Grid(final List<String> mapLines, final List<String> agentLines, final GameOptions options) {
 
-		this.game = game;
+		this.options = options;
+		children = new ArrayList<Node>();
 		this.mapLines = mapLines;
 		this.agentLines = agentLines;
-		cells = new ArrayList<List<Cell>>();
 		agents = new ArrayList<Agent>();
 		agentHouses = new HashMap<Integer, Building>();
+		staticMapListeners = new ArrayList<StaticMapListener>();
+		occupancyLog = new OccupancyLog();
+		navigation = new NavigationService(this);
+		addStaticMapListener(navigation);
+		if (options.getPlanningBudget() > 0) {
+			planningBudget = new PlanningBudget(options.getPlanningBudget());
+		} else {
+			planningBudget = null;
+		}
 		mapParser = new MapParser();
 		agentParser = new AgentParser();
 		mapParser.parse(this);
+		if (options.getSaveMap() != null) {
+			saveStore(Paths.get(options.getSaveMap()));
+		}
+		if (options.getKnowledge() == KnowledgeMode.BLACKBOARD) {
+			blackboard = new KnowledgeBlackboard(this);
+		}
+		agentHash = new SpatialHash<Agent>(store.getRows(), store.getColumns());
+		createDiscoveryCells();
 		agentParser.parseAgents(this);
 		this.speed = MAX_SPEED;
 	}
 
 	/**
-	 * Inits the rows, columns properties and creates the visual grid.
+	 * Puts every cell an agent can stand on next to an important building in
+	 * a spatial hash, and keeps it up to date when a cell turns unreachable or
+	 * reachable again. The listener comes after the discovery table's, so the
+	 * table is up to date when the cells around the changed one are looked at
+	 * again.
+	 */
+	private void createDiscoveryCells() {
+		discoveryCells = new SpatialHash<GridPoint>(store.getRows(), store.getColumns());
+		discoverySlots = new int[store.getSize()];
+		Arrays.fill(discoverySlots, -1);
+		for (int id = 0; id < store.getSize(); id++) {
+			updateDiscoveryCell(store.rowOf(id), store.columnOf(id));
+		}
+		addStaticMapListener(new StaticMapListener() {
+
+			@Override
+			public void staticCellChanged(final Cell cell) {
+				final int row = cell.getY();
+				final int column = cell.getX();
+				updateDiscoveryCell(row, column);
+				updateDiscoveryCell(row - 1, column);
+				updateDiscoveryCell(row + 1, column);
+				updateDiscoveryCell(row, column - 1);
+				updateDiscoveryCell(row, column + 1);
+			}
+		});
+	}
+
+	/**
+	 * Inserts a cell in the discovery cells or removes it, after whether an
+	 * agent can stand on it next to an important building.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 */
+	private void updateDiscoveryCell(final int row, final int column) {
+		if (!store.contains(row, column)) {
+			return;
+		}
+		final int id = store.idOf(row, column);
+		final boolean discovers = !store.isWall(id) && discoveryTable.getIdentities(id) != 0;
+		if (discovers && discoverySlots[id] < 0) {
+			discoverySlots[id] = discoveryCells.insert(getCell(id), row, column);
+		} else if (!discovers && discoverySlots[id] >= 0) {
+			discoveryCells.remove(discoverySlots[id]);
+			discoverySlots[id] = -1;
+		}
+	}
+
+	/**
+	 * Inits the rows, columns properties and what the path finders share.
 	 */
-	public void init(final Scene scene) {
-		this.rows = cells.size();
-		this.columns = cells.get(0).size();
+	public void init() {
+		this.rows = store.getRows();
+		this.columns = store.getColumns();
+		heuristic = options.getHeuristic().create(this);
+		if (options.getPathFinder() == PathFinderType.HPA) {
+			clusterGraph = new ClusterGraph(this);
+			addStaticMapListener(clusterGraph);
+		}
+		if (options.getPathFinder() == PathFinderType.COOPERATIVE) {
+			reservations = new ReservationTable(agents.size(), CooperativeSearch.WINDOW);
+			routeSearch = new AstarSearch(this);
+		}
+		engine = new SimulationEngine(this);
+	}
+
+	/**
+	 * Attaches a viewer: shows the nodes and the visual grid and starts the
+	 * animations.
+	 *
+	 * @param game
+	 *            the viewer
+	 * @param scene
+	 *            the scene the keys are handled on
+	 */
+	public void attach(final AgentGame game, final Scene scene) {
+		this.game = game;
+		game.getPane().getChildren().addAll(children);
+		for (final Node child : children) {
+			if (child instanceof MapEntity) {
+				((MapEntity) child).attachViewer();
+			}
+		}
 		createVisualGrid();
 		addGameAnimation();
 		addSpeedHandling(scene);
@@ -110,10 +294,7 @@ public final class Grid {
 				if (agentsMoving()) {
 					return;
 				}
-				for (final Agent agent : agents) {
-					agent.findNextMove();
-				}
-
+				engine.tick();
 				startAgentsAgain();
 			}
 
@@ -152,60 +333,77 @@ public final class Grid {
 	}
 
 	/**
-	 * Gets all the available neighboors.
+	 * Gets the neighbours of a cell as a mask of move bits. Only a few array
+	 * reads are made and nothing is allocated, so it suits the hot paths.
 	 *
 	 * @param currentCell
 	 *            the current cell
-	 * @return the neighboors
+	 * @param emptyOnly
+	 *            whether occupied neighbours are left out
+	 * @return the neighbour mask
 	 */
-	public List<GridPoint> getEmptyNeighboors(final Cell currentCell) {
-		final List<GridPoint> neighboors = new ArrayList<GridPoint>();
+	public int getNeighborMask(final Cell currentCell, final boolean emptyOnly) {
 		final int x = currentCell.getX();
 		final int y = currentCell.getY();
-		if (PositionTools.checkEmptyCell(this, y, x - 1)) {
-			neighboors.add(cells.get(y).get(x - 1));
+		final int id = currentCell.getId();
+		int mask = 0;
+		if (x > 0 && (!emptyOnly || !store.isOccupied(id - 1))) {
+			mask |= MoveEnum.LEFT.bit();
 		}
-		if (PositionTools.checkEmptyCell(this, y, x + 1)) {
-			neighboors.add(cells.get(y).get(x + 1));
+		if (x + 1 < columns && (!emptyOnly || !store.isOccupied(id + 1))) {
+			mask |= MoveEnum.RIGHT.bit();
 		}
-		if (PositionTools.checkEmptyCell(this, y - 1, x)) {
-			neighboors.add(cells.get(y - 1).get(x));
+		if (y > 0 && (!emptyOnly || !store.isOccupied(id - columns))) {
+			mask |= MoveEnum.UP.bit();
 		}
-		if (PositionTools.checkEmptyCell(this, y + 1, x)) {
-			neighboors.add(cells.get(y + 1).get(x));
+		if (y + 1 < rows && (!emptyOnly || !store.isOccupied(id + columns))) {
+			mask |= MoveEnum.DOWN.bit();
 		}
+		return mask;
+	}
 
-		return neighboors;
+	public void addStaticMapListener(final StaticMapListener listener) {
+		staticMapListeners.add(listener);
 	}
 
-	public List<GridPoint> getAllNeighboors(final Cell currentCell) {
-		final List<GridPoint> neighboors = new ArrayList<GridPoint>();
-		final int x = currentCell.getX();
-		final int y = currentCell.getY();
-		if (PositionTools.checkCell(this, y, x - 1)) {
-			neighboors.add(cells.get(y).get(x - 1));
-		}
-		if (PositionTools.checkCell(this, y, x + 1)) {
-			neighboors.add(cells.get(y).get(x + 1));
-		}
-		if (PositionTools.checkCell(this, y - 1, x)) {
-			neighboors.add(cells.get(y - 1).get(x));
-		}
-		if (PositionTools.checkCell(this, y + 1, x)) {
-			neighboors.add(cells.get(y + 1).get(x));
+	/**
+	 * Notifies the listeners that a cell turned unreachable or reachable
+	 * again.
+	 *
+	 * @param cell
+	 *            the changed cell
+	 */
+	public void fireStaticCellChanged(final Cell cell) {
+		staticChanges += 1;
+		for (final StaticMapListener listener : staticMapListeners) {
+			listener.staticCellChanged(cell);
 		}
+	}
 
-		return neighboors;
+	/**
+	 * Records that a cell may have turned free or occupied. Changes made
+	 * while the map is still being parsed are not recorded.
+	 *
+	 * @param cell
+	 *            the changed cell
+	 */
+	public void recordOccupancyChange(final Cell cell) {
+		if (columns > 0) {
+			occupancyLog.record(cell.getId());
+		}
 	}
 
 	/**
-	 * Adds a child to the pane.
+	 * Adds a child to the pane, once a viewer is attached.
 	 *
 	 * @param e
 	 *            the e
 	 */
 	public void addChild(final Node e) {
-		game.getPane().getChildren().add(e);
+		children.add(e);
+		if (game != null) {
+			game.getPane().getChildren().add(e);
+		}
 	}
 
 	public void updateSceneSpeed() {
@@ -222,7 +420,11 @@ public final class Grid {
 				agent.reset();
 			}
 		}
+		if (blackboard != null) {
+			blackboard.clear();
+		}
 		agentParser.parsePlans(this);
+		engine.resetTime();
 		if (game.isPaused()) {
 			game.togglePaused();
 		}
@@ -302,8 +504,88 @@ public final class Grid {
 
 	}
 
-	public List<List<Cell>> getCells() {
-		return cells;
+	/**
+	 * Creates the store of an empty map. The cells are made on first use.
+	 *
+	 * @param mapRows
+	 *            the map rows
+	 * @param mapColumns
+	 *            the map columns
+	 */
+	public void createStore(final int mapRows, final int mapColumns) {
+		store = options.getStorage().create(mapRows, mapColumns);
+		cellTiles = new Cell[store.getTileCount()][];
+	}
+
+	/**
+	 * Maps the store's wall and identity layers from a binary map file.
+	 *
+	 * @param file
+	 *            the binary map file
+	 */
+	public void mapStore(final Path file) {
+		try {
+			store = GridStore.map(file);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		cellTiles = new Cell[store.getTileCount()][];
+	}
+
+	/**
+	 * Writes the store's wall and identity layers to a binary map file.
+	 *
+	 * @param file
+	 *            the binary map file
+	 */
+	private void saveStore(final Path file) {
+		try {
+			store.write(file);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public GridStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Gets the cell at a position within the map, making it on first use.
+	 * There is only ever one cell per position, even when agents decide
+	 * their moves on several threads.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return the cell
+	 */
+	public Cell getCell(final int row, final int column) {
+		final Cell[] cells = cellTiles[store.tileOf(row, column)];
+		/* A cell seen here is complete, all its fields are final. */
+		final Cell cell = cells == null ? null : cells[store.slotOf(row, column)];
+		return cell != null ? cell : makeCell(row, column);
+	}
+
+	private synchronized Cell makeCell(final int row, final int column) {
+		final int tile = store.tileOf(row, column);
+		Cell[] cells = cellTiles[tile];
+		if (cells == null) {
+			cells = new Cell[GridStore.TILE_AREA];
+			cellTiles[tile] = cells;
+		}
+		final int slot = store.slotOf(row, column);
+		Cell cell = cells[slot];
+		if (cell == null) {
+			cell = new Cell(this, store, store.idOf(row, column));
+			cells[slot] = cell;
+		}
+		return cell;
+	}
+
+	public Cell getCell(final int id) {
+		return getCell(store.rowOf(id), store.columnOf(id));
 	}
 
 	public Dimension2D getCellDimension() {
@@ -350,4 +632,97 @@ public final class Grid {
 		return agentLines;
 	}
 
+	public GameOptions getOptions() {
+		return options;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(final long seed) {
+		this.seed = seed;
+	}
+
+	public NavigationService getNavigation() {
+		return navigation;
+	}
+
+	public OccupancyLog getOccupancyLog() {
+		return occupancyLog;
+	}
+
+	public int getStaticChanges() {
+		return staticChanges;
+	}
+
+	public ComponentLabels getComponentLabels() {
+		return componentLabels;
+	}
+
+	/**
+	 * Sets the component labels and keeps them up to date with the map.
+	 *
+	 * @param componentLabels
+	 *            the component labels
+	 */
+	public void setComponentLabels(final ComponentLabels componentLabels) {
+		this.componentLabels = componentLabels;
+		addStaticMapListener(componentLabels);
+	}
+
+	public DiscoveryTable getDiscoveryTable() {
+		return discoveryTable;
+	}
+
+	public void setDiscoveryTable(final DiscoveryTable discoveryTable) {
+		this.discoveryTable = discoveryTable;
+		addStaticMapListener(discoveryTable);
+	}
+
+	public Heuristic getHeuristic() {
+		return heuristic;
+	}
+
+	public PlanningBudget getPlanningBudget() {
+		return planningBudget;
+	}
+
+	public ReservationTable getReservations() {
+		return reservations;
+	}
+
+	public AstarSearch getRouteSearch() {
+		return routeSearch;
+	}
+
+	public SimulationEngine getEngine() {
+		return engine;
+	}
+
+	public ClusterGraph getClusterGraph() {
+		return clusterGraph;
+	}
+
+	public KnowledgeBlackboard getBlackboard() {
+		return blackboard;
+	}
+
+	public SpatialHash<Agent> getAgentHash() {
+		return agentHash;
+	}
+
+	public SpatialHash<GridPoint> getDiscoveryCells() {
+		return discoveryCells;
+	}
+
+	/**
+	 * Checks if a viewer is attached.
+	 *
+	 * @return true, if successful
+	 */
+	public boolean isAttached() {
+		return game != null;
+	}
+
 }
@@ -0,0 +1,452 @@
+package agentgame.grid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import agentgame.entity.MapEntity;
+
+/**
+ * Holds the state of every cell of the map in flat layers indexed by a dense
+ * cell id, row * columns + column. The static walls and the dynamic occupancy
+ * are kept in separate bit sets, so whether a cell can be entered is a couple
+ * of reads, and the occupant of a cell is kept as an int id into a
+ * registry of the entities placed on the map.
+ *
+ * The occupant ids are split in square tiles. Every tile starts as one
+ * shared empty tile and gets its own array on its first occupant, so a
+ * mostly blank map only pays for the tiles something was placed on.
+ *
+ * The wall, occupancy and building identity layers are buffers, kept on the
+ * heap or, for the largest maps, off the heap where the garbage collector
+ * never scans them. The wall and identity layers can be written to a binary
+ * map file and mapped straight back from it.
+ */
+public final class GridStore {
+
+	/** The occupant id of an empty cell. */
+	public static final int NO_OCCUPANT = 0;
+
+	/** The side of a tile, in cells. */
+	public static final int TILE_SIZE = 64;
+
+	/** The number of cells of a tile. */
+	public static final int TILE_AREA = TILE_SIZE * TILE_SIZE;
+
+	private static final int TILE_SHIFT = 6;
+
+	private static final int TILE_MASK = TILE_SIZE - 1;
+
+	/** The occupant ids of every tile nothing was placed on. Never written. */
+	private static final int[] EMPTY_TILE = new int[TILE_AREA];
+
+	/** The identity of a cell without an important building. */
+	public static final char NO_IDENTITY = 0;
+
+	/** Starts every binary map file: "AGM1". */
+	private static final int MAGIC = 0x41474D31;
+
+	/** The bytes before the layers of a binary map file. */
+	private static final int HEADER_SIZE = 16;
+
+	private final int rows;
+
+	private final int columns;
+
+	/** A set bit marks a cell that can never be walked on. */
+	private LongBuffer walls;
+
+	/** A set bit marks a cell that has an occupant. */
+	private final LongBuffer occupied;
+
+	/** The identity of the important building on every cell. */
+	private ByteBuffer identities;
+
+	/** The number of tiles along a row of the map. */
+	private final int tileColumns;
+
+	/** The occupant ids of every tile, by slot within the tile. */
+	private final int[][] occupantTiles;
+
+	/** The entities placed on the map, at their occupant id - 1. */
+	private final List<MapEntity> entities;
+
+	/** The occupant id of every entity placed on the map. */
+	private final Map<MapEntity, Integer> entityIds;
+
+	/**
+	 * Instantiates a new, empty grid store on the heap.
+	 *
+	 * @param rows
+	 *            the rows
+	 * @param columns
+	 *            the columns
+	 */
+	public GridStore(final int rows, final int columns) {
+		this(rows, columns, LongBuffer.allocate(wordsOf(rows, columns)),
+				LongBuffer.allocate(wordsOf(rows, columns)), ByteBuffer.allocate(rows * columns));
+	}
+
+	private GridStore(final int rows, final int columns, final LongBuffer walls, final LongBuffer occupied,
+			final ByteBuffer identities) {
+		this.rows = rows;
+		this.columns = columns;
+		this.walls = walls;
+		this.occupied = occupied;
+		this.identities = identities;
+		tileColumns = (columns + TILE_MASK) >>> TILE_SHIFT;
+		occupantTiles = new int[((rows + TILE_MASK) >>> TILE_SHIFT) * tileColumns][];
+		Arrays.fill(occupantTiles, EMPTY_TILE);
+		entities = new ArrayList<MapEntity>();
+		entityIds = new IdentityHashMap<MapEntity, Integer>();
+	}
+
+	/**
+	 * Creates a new, empty grid store whose layers are off the heap.
+	 *
+	 * @param rows
+	 *            the rows
+	 * @param columns
+	 *            the columns
+	 * @return the grid store
+	 */
+	public static GridStore offHeap(final int rows, final int columns) {
+		final int words = wordsOf(rows, columns);
+		return new GridStore(rows, columns, allocateDirect(8 * words).asLongBuffer(),
+				allocateDirect(8 * words).asLongBuffer(), allocateDirect(rows * columns));
+	}
+
+	/**
+	 * Maps the wall and identity layers of a binary map file off the heap.
+	 * The file is only read: a layer is copied off the heap the first time
+	 * it is written, so changes made while playing never reach the file.
+	 *
+	 * @param file
+	 *            the binary map file
+	 * @return the grid store
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static GridStore map(final Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(header, 0);
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+				throw new IOException("Not a binary map file: " + file);
+			}
+			final int rows = header.getInt();
+			final int columns = header.getInt();
+			final int words = wordsOf(rows, columns);
+			if (channel.size() != HEADER_SIZE + 8L * words + (long) rows * columns) {
+				throw new IOException("Truncated binary map file: " + file);
+			}
+			final ByteBuffer walls = channel.map(MapMode.READ_ONLY, HEADER_SIZE, 8L * words);
+			final ByteBuffer identities = channel.map(MapMode.READ_ONLY, HEADER_SIZE + 8L * words,
+					(long) rows * columns);
+			return new GridStore(rows, columns, walls.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer(),
+					allocateDirect(8 * words).asLongBuffer(), identities);
+		}
+	}
+
+	/**
+	 * Writes the wall and identity layers to a binary map file.
+	 *
+	 * @param file
+	 *            the binary map file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void write(final Path file) throws IOException {
+		final int words = wordsOf(rows, columns);
+		final ByteBuffer layers = ByteBuffer.allocate(HEADER_SIZE + 8 * words).order(ByteOrder.LITTLE_ENDIAN);
+		layers.putInt(MAGIC).putInt(rows).putInt(columns).putInt(0);
+		for (int word = 0; word < words; word++) {
+			layers.putLong(walls.get(word));
+		}
+		layers.flip();
+		final ByteBuffer identityLayer = identities.duplicate();
+		identityLayer.clear();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (layers.hasRemaining()) {
+				channel.write(layers);
+			}
+			while (identityLayer.hasRemaining()) {
+				channel.write(identityLayer);
+			}
+		}
+	}
+
+	private static int wordsOf(final int rows, final int columns) {
+		if (rows <= 0 || columns <= 0) {
+			throw new IllegalArgumentException("Grid size must be positive: " + rows + "x" + columns);
+		}
+		if ((long) rows * columns > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Grid is too large: " + rows + "x" + columns);
+		}
+		return (rows * columns + 63) >>> 6;
+	}
+
+	private static ByteBuffer allocateDirect(final int capacity) {
+		return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Checks if the layers are kept off the heap.
+	 *
+	 * @return true, if successful
+	 */
+	public boolean isOffHeap() {
+		return walls.isDirect();
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Gets the number of cells.
+	 *
+	 * @return the size
+	 */
+	public int getSize() {
+		return rows * columns;
+	}
+
+	public int getTileCount() {
+		return occupantTiles.length;
+	}
+
+	/**
+	 * Gets the tile holding a position within the map.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return the tile index
+	 */
+	public int tileOf(final int row, final int column) {
+		return (row >>> TILE_SHIFT) * tileColumns + (column >>> TILE_SHIFT);
+	}
+
+	/**
+	 * Gets the slot of a position within its tile.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return the slot, below TILE_AREA
+	 */
+	public int slotOf(final int row, final int column) {
+		return (row & TILE_MASK) << TILE_SHIFT | (column & TILE_MASK);
+	}
+
+	/**
+	 * Checks if a position is within the map.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return true, if successful
+	 */
+	public boolean contains(final int row, final int column) {
+		return row >= 0 && row < rows && column >= 0 && column < columns;
+	}
+
+	/**
+	 * Gets the id of the cell at a position within the map.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return the cell id
+	 */
+	public int idOf(final int row, final int column) {
+		return row * columns + column;
+	}
+
+	public int rowOf(final int id) {
+		return id / columns;
+	}
+
+	public int columnOf(final int id) {
+		return id % columns;
+	}
+
+	public boolean isWall(final int id) {
+		return (walls.get(id >>> 6) & (1L << id)) != 0;
+	}
+
+	/**
+	 * Marks a cell as a wall or walkable.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @param wall
+	 *            the wall
+	 * @return true, if the cell changed
+	 */
+	public boolean setWall(final int id, final boolean wall) {
+		if (isWall(id) == wall) {
+			return false;
+		}
+		if (walls.isReadOnly()) {
+			final ByteBuffer copy = allocateDirect(8 * walls.capacity());
+			copy.asLongBuffer().put(walls.duplicate());
+			walls = copy.asLongBuffer();
+		}
+		walls.put(id >>> 6, walls.get(id >>> 6) ^ 1L << id);
+		return true;
+	}
+
+	/**
+	 * Checks if a cell cannot be entered, for being a wall or having an
+	 * occupant.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @return true, if successful
+	 */
+	public boolean isOccupied(final int id) {
+		return ((walls.get(id >>> 6) | occupied.get(id >>> 6)) & (1L << id)) != 0;
+	}
+
+	/**
+	 * Checks if a position is within the map and can be entered.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return true, if successful
+	 */
+	public boolean isFree(final int row, final int column) {
+		return contains(row, column) && !isOccupied(row * columns + column);
+	}
+
+	/**
+	 * Gets the identity of the important building on a cell.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @return the identity, or NO_IDENTITY
+	 */
+	public char getIdentity(final int id) {
+		return (char) (identities.get(id) & 0xFF);
+	}
+
+	/**
+	 * Sets the identity of the important building on a cell.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @param identity
+	 *            the identity, a single byte character, or NO_IDENTITY
+	 */
+	public void setIdentity(final int id, final char identity) {
+		if (identity > 0xFF) {
+			throw new IllegalArgumentException("Identity does not fit a byte: " + identity);
+		}
+		if (getIdentity(id) == identity) {
+			return;
+		}
+		if (identities.isReadOnly()) {
+			final ByteBuffer copy = allocateDirect(identities.capacity());
+			copy.put(identities.duplicate());
+			copy.clear();
+			identities = copy;
+		}
+		identities.put(id, (byte) identity);
+	}
+
+	/**
+	 * Gets the occupant id of a cell.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @return the occupant id, or NO_OCCUPANT
+	 */
+	public int getOccupantId(final int id) {
+		final int row = id / columns;
+		final int column = id - row * columns;
+		return occupantTiles[tileOf(row, column)][slotOf(row, column)];
+	}
+
+	/**
+	 * Gets the occupant of a cell.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @return the occupant, or null
+	 */
+	public MapEntity getOccupant(final int id) {
+		final int occupantId = getOccupantId(id);
+		return occupantId == NO_OCCUPANT ? null : entities.get(occupantId - 1);
+	}
+
+	/**
+	 * Places an entity on a cell. An entity seen for the first time gets the
+	 * next occupant id.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @param occupant
+	 *            the occupant, or null to empty the cell
+	 */
+	public void setOccupant(final int id, final MapEntity occupant) {
+		if (occupant == null) {
+			clear(id);
+			return;
+		}
+		Integer occupantId = entityIds.get(occupant);
+		if (occupantId == null) {
+			entities.add(occupant);
+			occupantId = entities.size();
+			entityIds.put(occupant, occupantId);
+		}
+		final int row = id / columns;
+		final int column = id - row * columns;
+		final int tile = tileOf(row, column);
+		if (occupantTiles[tile] == EMPTY_TILE) {
+			occupantTiles[tile] = new int[TILE_AREA];
+		}
+		occupantTiles[tile][slotOf(row, column)] = occupantId;
+		occupied.put(id >>> 6, occupied.get(id >>> 6) | 1L << id);
+	}
+
+	/**
+	 * Empties a cell from its occupant.
+	 *
+	 * @param id
+	 *            the cell id
+	 */
+	public void clear(final int id) {
+		if ((occupied.get(id >>> 6) & (1L << id)) == 0) {
+			return;
+		}
+		final int row = id / columns;
+		final int column = id - row * columns;
+		occupantTiles[tileOf(row, column)][slotOf(row, column)] = NO_OCCUPANT;
+		occupied.put(id >>> 6, occupied.get(id >>> 6) & ~(1L << id));
+	}
+
+}
@@ -12,5 +12,28 @@ public enum MoveEnum {
 	/** The left direction. */
 	LEFT,
 	/** The right direction. */
-	RIGHT
+	RIGHT;
+
+	/** The moves by ordinal, shared to avoid copying values(). */
+	private static final MoveEnum[] MOVES = values();
+
+	/**
+	 * Gets the bit of this move in a neighbour mask.
+	 *
+	 * @return the bit
+	 */
+	public int bit() {
+		return 1 << ordinal();
+	}
+
+	/**
+	 * Gets the move of the lowest bit set in a neighbour mask.
+	 *
+	 * @param mask
+	 *            the neighbour mask, not empty
+	 * @return the move
+	 */
+	public static MoveEnum lowestOf(final int mask) {
+		return MOVES[Integer.numberOfTrailingZeros(mask)];
+	}
 }
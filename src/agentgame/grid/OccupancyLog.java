@@ -0,0 +1,72 @@
+package agentgame.grid;
+
+/**
+ * Records the cells whose free or occupied state may have changed, so
+ * planners that keep their search between ticks only repair what changed.
+ *
+ * The log is a ring of the latest changes. Every change gets the next
+ * position, readers remember the position they read up to and ask whether
+ * the changes since then are still held.
+ */
+public class OccupancyLog {
+
+	/** The number of changes held, a power of two. */
+	private static final int CAPACITY = 1 << 16;
+
+	/** The changed cell indices. */
+	private final int[] cells;
+
+	/** The position the next change gets. */
+	private long position;
+
+	/**
+	 * Instantiates a new occupancy log.
+	 */
+	public OccupancyLog() {
+		cells = new int[CAPACITY];
+		position = 0;
+	}
+
+	/**
+	 * Records a change.
+	 *
+	 * @param cell
+	 *            the changed cell index
+	 */
+	public void record(final int cell) {
+		cells[(int) (position & (CAPACITY - 1))] = cell;
+		position += 1;
+	}
+
+	/**
+	 * Gets the position the next change gets.
+	 *
+	 * @return the position
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Checks whether all the changes from a position on are still held.
+	 *
+	 * @param from
+	 *            the position
+	 * @return true, if successful
+	 */
+	public boolean holdsChangesFrom(final long from) {
+		return position - from <= CAPACITY;
+	}
+
+	/**
+	 * Gets the cell index of a held change.
+	 *
+	 * @param at
+	 *            the position of the change
+	 * @return the changed cell index
+	 */
+	public int getChange(final long at) {
+		return cells[(int) (at & (CAPACITY - 1))];
+	}
+
+}
@@ -0,0 +1,92 @@
+package agentgame.grid;
+
+/**
+ * Splits a number of node expansions per tick between the agents.
+ *
+ * Every agent is allotted an equal part, the remainder going one node each to
+ * agents picked in turns over the ticks. What an agent does not spend is
+ * handed on to the agents after it in the same tick.
+ */
+public class PlanningBudget {
+
+	/** The node expansions of one tick. */
+	private final int nodesPerTick;
+
+	/** The agents of the current tick. */
+	private int agentCount;
+
+	/** The position of the current agent in the tick. */
+	private int position;
+
+	/** The position the remainder starts from. */
+	private int rotation;
+
+	/** What the current agent may still spend. */
+	private int share;
+
+	/**
+	 * Instantiates a new planning budget.
+	 *
+	 * @param nodesPerTick
+	 *            the node expansions of one tick
+	 */
+	public PlanningBudget(final int nodesPerTick) {
+		if (nodesPerTick < 1) {
+			throw new IllegalArgumentException("The planning budget must be positive: " + nodesPerTick);
+		}
+		this.nodesPerTick = nodesPerTick;
+		this.rotation = 0;
+	}
+
+	/**
+	 * Starts a new tick.
+	 *
+	 * @param agentCount
+	 *            the number of agents that will plan
+	 */
+	public void startTick(final int agentCount) {
+		this.agentCount = agentCount;
+		position = 0;
+		share = 0;
+		if (agentCount > 0) {
+			rotation = (rotation + nodesPerTick % agentCount) % agentCount;
+		}
+	}
+
+	/**
+	 * Moves on to the next agent of the tick, which also gets what the
+	 * previous one left.
+	 */
+	public void nextAgent() {
+		final int unspent = Math.max(share, 0);
+		share = unspent;
+		if (position < agentCount) {
+			final int extra = nodesPerTick % agentCount;
+			share += nodesPerTick / agentCount;
+			if ((position - rotation + agentCount) % agentCount < extra) {
+				share += 1;
+			}
+			position += 1;
+		}
+	}
+
+	/**
+	 * Gets what the current agent may still spend.
+	 *
+	 * @return the node expansions
+	 */
+	public int getShare() {
+		return Math.max(share, 0);
+	}
+
+	/**
+	 * Spends node expansions of the current agent.
+	 *
+	 * @param nodes
+	 *            the node expansions spent
+	 */
+	public void spend(final int nodes) {
+		share -= nodes;
+	}
+
+}
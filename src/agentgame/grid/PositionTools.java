@@ -36,8 +36,8 @@ public final class PositionTools {
 		if (!checkCell(grid, x, y)) {
 			return false;
 		}
-		final boolean checkOccupant = grid.getCells().get(x).get(y).isOccupied();
-		return !checkOccupant;
+		final GridStore store = grid.getStore();
+		return !store.isOccupied(store.idOf(x, y));
 	}
 
 	public static boolean checkCell(final Grid grid, final int x, final int y) {
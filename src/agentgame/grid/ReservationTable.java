@@ -0,0 +1,242 @@
+package agentgame.grid;
+
+import java.util.Arrays;
+
+/**
+ * Holds which agent will stand on which cell at which tick, shared by the
+ * cooperative planners. Time t is the state of the grid after the moves of
+ * tick t.
+ *
+ * Only a short horizon is kept, so the reservations are hashed by cell and
+ * tick in an open addressing table sized from the number of agents, not from
+ * the map. A reservation older than the previous tick is dead and its slot is
+ * taken again, so old reservations expire by themselves.
+ */
+public class ReservationTable {
+
+	/** The owner of a free cell. */
+	public static final int NO_OWNER = 0;
+
+	/** Marks a slot that never held a reservation and ends every lookup. */
+	private static final int EMPTY = Integer.MIN_VALUE;
+
+	/** Marks a slot whose reservation was released. */
+	private static final int RELEASED = Integer.MIN_VALUE + 1;
+
+	/** The number of ticks a reservation can be ahead, the previous one included. */
+	private final int slots;
+
+	/** The cell of every slot. */
+	private int[] cells;
+
+	/** The tick of every slot, EMPTY or RELEASED. */
+	private int[] ticks;
+
+	/** The reserving owner of every slot. */
+	private int[] owners;
+
+	/** The slots that are not EMPTY. */
+	private int used;
+
+	/** The current tick. */
+	private int time;
+
+	/** The last owner given out. */
+	private int lastOwner;
+
+	/**
+	 * Instantiates a new reservation table.
+	 *
+	 * @param agents
+	 *            the number of agents expected to reserve
+	 * @param horizon
+	 *            how many ticks ahead reservations are made
+	 */
+	public ReservationTable(final int agents, final int horizon) {
+		if (horizon < 1) {
+			throw new IllegalArgumentException("The horizon must be positive: " + horizon);
+		}
+		/* From the previous tick up to the horizon. */
+		this.slots = horizon + 2;
+		allocate(capacityFor(Math.max(agents, 1) * slots));
+		time = 0;
+		lastOwner = NO_OWNER;
+	}
+
+	/**
+	 * Gives out a new owner.
+	 *
+	 * @return the owner
+	 */
+	public int register() {
+		lastOwner += 1;
+		return lastOwner;
+	}
+
+	/**
+	 * Starts the next tick.
+	 */
+	public void advance() {
+		time += 1;
+	}
+
+	public int getTime() {
+		return time;
+	}
+
+	/**
+	 * Reserves a cell at a tick.
+	 *
+	 * @param cell
+	 *            the cell index
+	 * @param tick
+	 *            the tick, from the previous one up to the horizon
+	 * @param owner
+	 *            the owner
+	 */
+	public void reserve(final int cell, final int tick, final int owner) {
+		final int mask = ticks.length - 1;
+		int free = -1;
+		int slot = hash(cell, tick) & mask;
+		for (; ticks[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (ticks[slot] == tick && cells[slot] == cell) {
+				owners[slot] = owner;
+				return;
+			}
+			if (free < 0 && !isLive(slot)) {
+				free = slot;
+			}
+		}
+		if (free < 0) {
+			free = slot;
+			used += 1;
+		}
+		cells[free] = cell;
+		ticks[free] = tick;
+		owners[free] = owner;
+		if (2 * used > ticks.length) {
+			rehash();
+		}
+	}
+
+	/**
+	 * Gets the owner of a cell at a tick.
+	 *
+	 * @param cell
+	 *            the cell index
+	 * @param tick
+	 *            the tick, from the previous one up to the horizon
+	 * @return the owner, or NO_OWNER
+	 */
+	public int getOwner(final int cell, final int tick) {
+		final int slot = find(cell, tick);
+		return slot >= 0 ? owners[slot] : NO_OWNER;
+	}
+
+	/**
+	 * Drops a reservation if it is still held by the given owner.
+	 *
+	 * @param cell
+	 *            the cell index
+	 * @param tick
+	 *            the tick
+	 * @param owner
+	 *            the owner
+	 */
+	public void release(final int cell, final int tick, final int owner) {
+		final int slot = find(cell, tick);
+		if (slot >= 0 && owners[slot] == owner) {
+			ticks[slot] = RELEASED;
+		}
+	}
+
+	/**
+	 * Finds the slot of a reservation still in the horizon.
+	 *
+	 * @param cell
+	 *            the cell index
+	 * @param tick
+	 *            the tick
+	 * @return the slot, or -1
+	 */
+	private int find(final int cell, final int tick) {
+		if (tick < time - 1) {
+			return -1;
+		}
+		final int mask = ticks.length - 1;
+		for (int slot = hash(cell, tick) & mask; ticks[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (ticks[slot] == tick && cells[slot] == cell) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if a slot holds a reservation that is neither released nor
+	 * older than the previous tick.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return true, if successful
+	 */
+	private boolean isLive(final int slot) {
+		return ticks[slot] != RELEASED && ticks[slot] >= time - 1;
+	}
+
+	/**
+	 * Puts the live reservations in fresh slots, dropping the dead ones, and
+	 * grows the table if they fill a quarter of it.
+	 */
+	private void rehash() {
+		final int[] oldCells = cells;
+		final int[] oldTicks = ticks;
+		final int[] oldOwners = owners;
+		int live = 0;
+		for (int slot = 0; slot < oldTicks.length; slot++) {
+			if (isLive(slot)) {
+				live += 1;
+			}
+		}
+		allocate(Math.max(oldTicks.length, capacityFor(live)));
+		final int mask = ticks.length - 1;
+		for (int old = 0; old < oldTicks.length; old++) {
+			if (oldTicks[old] == EMPTY || oldTicks[old] == RELEASED || oldTicks[old] < time - 1) {
+				continue;
+			}
+			int slot = hash(oldCells[old], oldTicks[old]) & mask;
+			while (ticks[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			cells[slot] = oldCells[old];
+			ticks[slot] = oldTicks[old];
+			owners[slot] = oldOwners[old];
+			used += 1;
+		}
+	}
+
+	private void allocate(final int capacity) {
+		cells = new int[capacity];
+		ticks = new int[capacity];
+		owners = new int[capacity];
+		Arrays.fill(ticks, EMPTY);
+		used = 0;
+	}
+
+	/**
+	 * Gives the power of two capacity that keeps some reservations within a
+	 * quarter of the slots.
+	 *
+	 * @param reservations
+	 *            the reservations
+	 * @return the capacity
+	 */
+	private static int capacityFor(final int reservations) {
+		return Integer.highestOneBit(Math.max(4 * reservations - 1, 1)) << 1;
+	}
+
+	private int hash(final int cell, final int tick) {
+		return (cell * slots + Math.floorMod(tick, slots)) * 0x9E3779B1 >>> 7;
+	}
+
+}
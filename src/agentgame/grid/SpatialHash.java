@@ -0,0 +1,236 @@
+package agentgame.grid;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds what is near a cell without looking at everything. The map is split
+ * in square buckets and every member is linked into the bucket of its cell,
+ * so a range query only reads the buckets the range touches and a move only
+ * relinks a member that crossed into another bucket.
+ *
+ * A member is known by the slot it got when it was inserted. Queries fill a
+ * list the caller keeps, so they create nothing once the list is large
+ * enough.
+ *
+ * @param <T>
+ *            the type of the members
+ */
+public class SpatialHash<T> {
+
+	/** The side of a bucket is 1 << BUCKET_SHIFT cells. */
+	private static final int BUCKET_SHIFT = 4;
+
+	/** The index of no slot. */
+	private static final int NONE = -1;
+
+	/** The slots held before the slot arrays grow. */
+	private static final int INITIAL_SLOTS = 16;
+
+	private final int rows;
+
+	private final int columns;
+
+	/** The number of buckets along a row of the map. */
+	private final int bucketColumns;
+
+	/** The first slot of every bucket, or NONE. */
+	private final int[] heads;
+
+	/** The member of every slot, null if the slot is free. */
+	private Object[] members;
+
+	/** The row of every slot's member. */
+	private int[] memberRows;
+
+	/** The column of every slot's member. */
+	private int[] memberColumns;
+
+	/** The next slot in the same bucket, or the next free slot. */
+	private int[] next;
+
+	/** The slot before in the same bucket, or NONE. */
+	private int[] previous;
+
+	/** The number of slots ever handed out. */
+	private int slotCount;
+
+	/** The first free slot, or NONE. */
+	private int free;
+
+	/**
+	 * Instantiates a new empty spatial hash over a map.
+	 *
+	 * @param rows
+	 *            the rows of the map
+	 * @param columns
+	 *            the columns of the map
+	 */
+	public SpatialHash(final int rows, final int columns) {
+		this.rows = rows;
+		this.columns = columns;
+		bucketColumns = (columns >>> BUCKET_SHIFT) + 1;
+		heads = new int[((rows >>> BUCKET_SHIFT) + 1) * bucketColumns];
+		Arrays.fill(heads, NONE);
+		members = new Object[INITIAL_SLOTS];
+		memberRows = new int[INITIAL_SLOTS];
+		memberColumns = new int[INITIAL_SLOTS];
+		next = new int[INITIAL_SLOTS];
+		previous = new int[INITIAL_SLOTS];
+		slotCount = 0;
+		free = NONE;
+	}
+
+	/**
+	 * Adds a member on a cell.
+	 *
+	 * @param member
+	 *            the member
+	 * @param row
+	 *            the row of its cell
+	 * @param column
+	 *            the column of its cell
+	 * @return the slot of the member, to move or remove it by
+	 */
+	public int insert(final T member, final int row, final int column) {
+		if (member == null) {
+			throw new IllegalArgumentException("A spatial hash holds no null members.");
+		}
+		checkCell(row, column);
+		final int slot;
+		if (free != NONE) {
+			slot = free;
+			free = next[slot];
+		} else {
+			if (slotCount == members.length) {
+				grow();
+			}
+			slot = slotCount;
+			slotCount += 1;
+		}
+		members[slot] = member;
+		link(slot, row, column);
+		return slot;
+	}
+
+	/**
+	 * Moves a member to another cell.
+	 *
+	 * @param slot
+	 *            the slot of the member
+	 * @param row
+	 *            the row of its new cell
+	 * @param column
+	 *            the column of its new cell
+	 */
+	public void move(final int slot, final int row, final int column) {
+		checkSlot(slot);
+		checkCell(row, column);
+		if (bucketOf(memberRows[slot], memberColumns[slot]) == bucketOf(row, column)) {
+			memberRows[slot] = row;
+			memberColumns[slot] = column;
+			return;
+		}
+		unlink(slot);
+		link(slot, row, column);
+	}
+
+	/**
+	 * Removes a member. Its slot may be handed out again.
+	 *
+	 * @param slot
+	 *            the slot of the member
+	 */
+	public void remove(final int slot) {
+		checkSlot(slot);
+		unlink(slot);
+		members[slot] = null;
+		next[slot] = free;
+		free = slot;
+	}
+
+	/**
+	 * Finds the members at most a number of steps from a cell, counting the
+	 * rows and the columns apart.
+	 *
+	 * @param row
+	 *            the row of the cell
+	 * @param column
+	 *            the column of the cell
+	 * @param radius
+	 *            the steps
+	 * @param into
+	 *            emptied and filled with the members found
+	 * @return the number of members found
+	 */
+	@SuppressWarnings("unchecked")
+	public int query(final int row, final int column, final int radius, final List<? super T> into) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("The radius cannot be negative: " + radius);
+		}
+		into.clear();
+		final int firstRow = Math.max(0, row - radius) >>> BUCKET_SHIFT;
+		final int lastRow = Math.min(rows - 1, row + radius) >>> BUCKET_SHIFT;
+		final int firstColumn = Math.max(0, column - radius) >>> BUCKET_SHIFT;
+		final int lastColumn = Math.min(columns - 1, column + radius) >>> BUCKET_SHIFT;
+		for (int bucketRow = firstRow; bucketRow <= lastRow; bucketRow++) {
+			for (int bucketColumn = firstColumn; bucketColumn <= lastColumn; bucketColumn++) {
+				for (int slot = heads[bucketRow * bucketColumns + bucketColumn]; slot != NONE; slot = next[slot]) {
+					if (Math.abs(memberRows[slot] - row) + Math.abs(memberColumns[slot] - column) <= radius) {
+						into.add((T) members[slot]);
+					}
+				}
+			}
+		}
+		return into.size();
+	}
+
+	private void link(final int slot, final int row, final int column) {
+		final int bucket = bucketOf(row, column);
+		memberRows[slot] = row;
+		memberColumns[slot] = column;
+		previous[slot] = NONE;
+		next[slot] = heads[bucket];
+		if (heads[bucket] != NONE) {
+			previous[heads[bucket]] = slot;
+		}
+		heads[bucket] = slot;
+	}
+
+	private void unlink(final int slot) {
+		if (previous[slot] != NONE) {
+			next[previous[slot]] = next[slot];
+		} else {
+			heads[bucketOf(memberRows[slot], memberColumns[slot])] = next[slot];
+		}
+		if (next[slot] != NONE) {
+			previous[next[slot]] = previous[slot];
+		}
+	}
+
+	private int bucketOf(final int row, final int column) {
+		return (row >>> BUCKET_SHIFT) * bucketColumns + (column >>> BUCKET_SHIFT);
+	}
+
+	private void grow() {
+		final int size = members.length * 2;
+		members = Arrays.copyOf(members, size);
+		memberRows = Arrays.copyOf(memberRows, size);
+		memberColumns = Arrays.copyOf(memberColumns, size);
+		next = Arrays.copyOf(next, size);
+		previous = Arrays.copyOf(previous, size);
+	}
+
+	private void checkCell(final int row, final int column) {
+		if (row < 0 || row >= rows || column < 0 || column >= columns) {
+			throw new IllegalArgumentException("Cell is outside the map: " + row + ", " + column);
+		}
+	}
+
+	private void checkSlot(final int slot) {
+		if (slot < 0 || slot >= slotCount || members[slot] == null) {
+			throw new IllegalArgumentException("No member in slot: " + slot);
+		}
+	}
+
+}
@@ -0,0 +1,18 @@
+package agentgame.grid;
+
+import agentgame.grid.cell.Cell;
+
+/**
+ * Gets notified when the static part of the map changes.
+ */
+public interface StaticMapListener {
+
+	/**
+	 * Called after a cell turned unreachable or reachable again.
+	 *
+	 * @param cell
+	 *            the changed cell
+	 */
+	public void staticCellChanged(Cell cell);
+
+}
@@ -0,0 +1,58 @@
+package agentgame.grid;
+
+/**
+ * The available places to keep the grid store layers, selectable per run.
+ */
+public enum StorageType {
+
+	/** Buffers on the heap. */
+	HEAP("heap"),
+	/** Direct buffers, never scanned by the garbage collector. */
+	OFF_HEAP("offheap");
+
+	/** The name used on the command line. */
+	private final String optionName;
+
+	private StorageType(final String optionName) {
+		this.optionName = optionName;
+	}
+
+	/**
+	 * Creates an empty grid store of this type.
+	 *
+	 * @param rows
+	 *            the rows
+	 * @param columns
+	 *            the columns
+	 * @return the grid store
+	 */
+	public GridStore create(final int rows, final int columns) {
+		switch (this) {
+		case OFF_HEAP:
+			return GridStore.offHeap(rows, columns);
+		default:
+			return new GridStore(rows, columns);
+		}
+	}
+
+	public String getOptionName() {
+		return optionName;
+	}
+
+	/**
+	 * Gets the type by its command line name.
+	 *
+	 * @param optionName
+	 *            the option name
+	 * @return the storage type
+	 */
+	public static StorageType fromOptionName(final String optionName) {
+		for (final StorageType type : values()) {
+			if (type.optionName.equalsIgnoreCase(optionName.trim())) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Unknown storage: " + optionName);
+	}
+
+}
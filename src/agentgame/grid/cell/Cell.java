@@ -1,9 +1,8 @@
 package agentgame.grid.cell;
 
-import java.util.List;
-
 import agentgame.entity.MapEntity;
 import agentgame.grid.Grid;
+import agentgame.grid.GridStore;
 import agentgame.grid.MoveEnum;
 import agentgame.grid.PositionTools;
 import agentgame.path.point.GridPoint;
@@ -11,51 +10,45 @@ import agentgame.path.point.GridPoint;
 /**
  * Represents everything on the map. Holds information like occupant(building,
  * agent) etc.
+ *
+ * A cell is a view over its id in the grid's {@link GridStore}, where its
+ * state is kept. The grid makes a cell the first time it is asked for and
+ * keeps it, so cells can be compared by identity.
  */
 public final class Cell implements GridPoint {
 
 	/** The grid. */
-	private Grid grid;
+	private final Grid grid;
 
-	/** The x. */
-	private int x;
+	/** The store holding the cell's state. */
+	private final GridStore store;
 
-	/** The y. */
-	private int y;
+	/** The cell id. */
+	private final int id;
 
-	/** The occupant. */
-	private MapEntity occupant;
-
-	/** The unreachable. */
-	private boolean unreachable;
+	/** The x. */
+	private final int x;
 
-	/**
-	 * Instantiates a new cell.
-	 */
-	public Cell() {
-		this.occupant = null;
-		this.x = -1;
-		this.y = -1;
-	}
+	/** The y. */
+	private final int y;
 
 	/**
 	 * Instantiates a new cell.
 	 *
 	 * @param grid
 	 *            the grid
-	 * @param x
-	 *            the x
-	 * @param y
-	 *            the y
+	 * @param store
+	 *            the store of the grid
+	 * @param id
+	 *            the cell id
 	 */
-	public Cell(final Grid grid, final int x, final int y) {
-		PositionTools.checkNegative(x, "x");
-		PositionTools.checkNegative(y, "y");
-		this.occupant = null;
-		unreachable = false;
-		this.x = y;
-		this.y = x;
+	public Cell(final Grid grid, final GridStore store, final int id) {
+		PositionTools.checkNegative(id, "id");
 		this.grid = grid;
+		this.store = store;
+		this.id = id;
+		this.x = store.columnOf(id);
+		this.y = store.rowOf(id);
 	}
 
 	/**
@@ -63,7 +56,12 @@ public final class Cell implements GridPoint {
 	 */
 	@Override
 	public void clear() {
-		occupant = null;
+		store.clear(id);
+		recordChange();
+	}
+
+	public int getId() {
+		return id;
 	}
 
 	@Override
@@ -71,11 +69,6 @@ public final class Cell implements GridPoint {
 		return x;
 	}
 
-	public void setX(final int x) {
-		PositionTools.checkNegative(x, "x");
-		this.x = x;
-	}
-
 	@Override
 	public int getY() {
 		return y;
@@ -92,16 +85,16 @@ public final class Cell implements GridPoint {
 		GridPoint point = null;
 		switch (move) {
 		case UP:
-			point = grid.getCells().get(y - 1).get(x);
+			point = grid.getCell(id - store.getColumns());
 			break;
 		case DOWN:
-			point = grid.getCells().get(y + 1).get(x);
+			point = grid.getCell(id + store.getColumns());
 			break;
 		case LEFT:
-			point = grid.getCells().get(y).get(x - 1);
+			point = grid.getCell(id - 1);
 			break;
 		case RIGHT:
-			point = grid.getCells().get(y).get(x + 1);
+			point = grid.getCell(id + 1);
 			break;
 
 		}
@@ -130,45 +123,54 @@ public final class Cell implements GridPoint {
 
 	@Override
 	public boolean isOccupied() {
-		return unreachable || occupant != null;
+		return store.isOccupied(id);
 	}
 
 	@Override
-	public List<GridPoint> getEmptyNeighboors() {
-		return grid.getEmptyNeighboors(this);
+	public int getEmptyNeighborMask() {
+		return grid.getNeighborMask(this, true);
 	}
 
 	@Override
-	public List<GridPoint> getAllNeighboors() {
-		return grid.getAllNeighboors(this);
+	public int getAllNeighborMask() {
+		return grid.getNeighborMask(this, false);
 	}
 
 	@Override
 	public void setOccupant(final MapEntity occupant) {
-		this.occupant = occupant;
+		store.setOccupant(id, occupant);
+		recordChange();
 	}
 
-	public void setY(final int y) {
-		PositionTools.checkNegative(y, "y");
-		this.y = y;
+	@Override
+	public MapEntity getOccupant() {
+		return store.getOccupant(id);
 	}
 
 	@Override
-	public MapEntity getOccupant() {
-		return occupant;
+	public char getIdentity() {
+		return store.getIdentity(id);
 	}
 
 	public boolean isUnreachable() {
-		return unreachable;
+		return store.isWall(id);
 	}
 
 	public void setUnreachable(final boolean unreachable) {
-		this.unreachable = unreachable;
+		if (!store.setWall(id, unreachable)) {
+			return;
+		}
+		recordChange();
+		grid.fireStaticCellChanged(this);
+	}
+
+	private void recordChange() {
+		grid.recordOccupancyChange(this);
 	}
 
 	@Override
 	public GridPoint fetchGridPoint(final int x, final int y) {
-		return grid.getCells().get(x).get(y);
+		return grid.getCell(x, y);
 	}
 
 	@Override
@@ -0,0 +1,214 @@
+package agentgame.grid.cell;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import agentgame.grid.Grid;
+import agentgame.grid.GridStore;
+import agentgame.path.point.GridPoint;
+
+/**
+ * A set of cells kept as a bitset over the cell ids of the grid. Only the
+ * words between the lowest and the highest cell in the set are held, so a
+ * set of nearby cells stays small on a large map. Cells are added by id;
+ * through the {@link java.util.Set} interface the set can only be read.
+ */
+public class CellSet extends AbstractSet<GridPoint> {
+
+	/** The words of an empty set. */
+	private static final long[] NO_WORDS = new long[0];
+
+	/** The grid. */
+	private final Grid grid;
+
+	/** The bits of the held words, cell id 64 * (firstWord + i) + b at bit b of word i. */
+	private long[] words;
+
+	/** The index of the first held word. */
+	private int firstWord;
+
+	/** The number of cells in the set. */
+	private int size;
+
+	/**
+	 * Instantiates a new empty cell set.
+	 *
+	 * @param grid
+	 *            the grid
+	 */
+	public CellSet(final Grid grid) {
+		this.grid = grid;
+		this.words = NO_WORDS;
+		this.firstWord = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a cell.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @return true, if the cell was not in the set
+	 */
+	public boolean addCell(final int id) {
+		final int word = id >>> 6;
+		cover(word, word + 1);
+		final long bit = 1L << id;
+		if ((words[word - firstWord] & bit) != 0) {
+			return false;
+		}
+		words[word - firstWord] |= bit;
+		size += 1;
+		return true;
+	}
+
+	/**
+	 * Checks if a cell is in the set.
+	 *
+	 * @param id
+	 *            the cell id
+	 * @return true, if successful
+	 */
+	public boolean containsCell(final int id) {
+		final int index = (id >>> 6) - firstWord;
+		return index >= 0 && index < words.length && (words[index] & 1L << id) != 0;
+	}
+
+	/**
+	 * Adds every cell of another set, a word at a time.
+	 *
+	 * @param other
+	 *            the other set
+	 * @param listener
+	 *            told about every cell that was not in this set, may be null
+	 * @return the number of cells that were not in this set
+	 */
+	public int or(final CellSet other, final Listener listener) {
+		if (other.size == 0) {
+			return 0;
+		}
+		cover(other.firstWord, other.firstWord + other.words.length);
+		final int offset = other.firstWord - firstWord;
+		int added = 0;
+		for (int i = 0; i < other.words.length; i++) {
+			final long theirs = other.words[i];
+			if (theirs == 0) {
+				continue;
+			}
+			final long mine = words[offset + i];
+			long fresh = theirs & ~mine;
+			added += Long.bitCount(fresh);
+			words[offset + i] = mine | theirs;
+			if (listener == null) {
+				continue;
+			}
+			final int base = (other.firstWord + i) << 6;
+			while (fresh != 0) {
+				listener.cellAdded(base + Long.numberOfTrailingZeros(fresh));
+				fresh &= fresh - 1;
+			}
+		}
+		size += added;
+		return added;
+	}
+
+	/**
+	 * Makes sure the words from one index up to another are held.
+	 *
+	 * @param from
+	 *            the first word index
+	 * @param to
+	 *            the word index after the last
+	 */
+	private void cover(final int from, final int to) {
+		if (words.length == 0) {
+			words = new long[to - from];
+			firstWord = from;
+			return;
+		}
+		final int lastWord = firstWord + words.length;
+		if (from >= firstWord && to <= lastWord) {
+			return;
+		}
+		final int start = Math.min(from, firstWord);
+		final long[] grown = new long[Math.max(to, lastWord) - start];
+		System.arraycopy(words, 0, grown, firstWord - start, words.length);
+		words = grown;
+		firstWord = start;
+	}
+
+	@Override
+	public boolean contains(final Object object) {
+		if (!(object instanceof GridPoint)) {
+			return false;
+		}
+		final GridPoint point = (GridPoint) object;
+		final GridStore store = grid.getStore();
+		return store.contains(point.getY(), point.getX()) && containsCell(store.idOf(point.getY(), point.getX()));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(words, 0L);
+		size = 0;
+	}
+
+	@Override
+	public Iterator<GridPoint> iterator() {
+		return new Iterator<GridPoint>() {
+
+			/** The index of the word being read. */
+			private int index = 0;
+
+			/** The bits of that word not given yet. */
+			private long remaining = words.length > 0 ? words[0] : 0L;
+
+			@Override
+			public boolean hasNext() {
+				while (remaining == 0 && index + 1 < words.length) {
+					index += 1;
+					remaining = words[index];
+				}
+				return remaining != 0;
+			}
+
+			@Override
+			public GridPoint next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				final int bit = Long.numberOfTrailingZeros(remaining);
+				remaining &= remaining - 1;
+				return grid.getCell(((firstWord + index) << 6) + bit);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Cells are only added to a cell set.");
+			}
+		};
+	}
+
+	/**
+	 * Gets told about the cells an OR adds.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called for a cell that was added.
+		 *
+		 * @param id
+		 *            the cell id
+		 */
+		public void cellAdded(int id);
+
+	}
+
+}
@@ -1,6 +1,7 @@
 package agentgame.parser;
 
 import java.util.List;
+import java.util.SplittableRandom;
 
 import agentgame.entity.Building;
 import agentgame.entity.agent.Agent;
@@ -11,19 +12,26 @@ import javafx.scene.paint.Color;
 
 public class AgentParser {
 
+	/** Starts the line of the agent file that gives the random seed. */
+	public static final String SEED_PREFIX = "seed=";
+
 	public void parseAgents(final Grid grid) {
 		final List<String> lines = grid.getAgentLines();
+		final long seed = findSeed(grid);
+		grid.setSeed(seed);
+		/* Every agent gets its own generator, taken in the file's order. */
+		final SplittableRandom seeds = new SplittableRandom(seed);
 		Agent agent = null;
 		for (final String line : lines) {
 			if (isNewAgent(line)) {
 				/* New Agent found. */
 				final int agentNumber = Integer.parseInt(line);
 				final Building house = grid.getAgentHouses().get(agentNumber % 10);
-				final Cell houseCell = grid.getCells().get(house.getY()).get(house.getX());
+				final Cell houseCell = grid.getCell(house.getY(), house.getX());
 				final Dimension2D agentDimension = new Dimension2D(
 						grid.getCellDimension().getWidth() * Agent.SLIM_FACTOR,
 						grid.getCellDimension().getHeight() * Agent.SLIM_FACTOR);
-				agent = new Agent(agentNumber, houseCell, agentDimension);
+				agent = new Agent(agentNumber, grid, houseCell, agentDimension, seeds.nextLong());
 				agent.setColor(Color.CYAN);
 				grid.getAgents().add(agent);
 				grid.addChild(agent);
@@ -38,6 +46,34 @@ public class AgentParser {
 		parsePlans(grid);
 	}
 
+	/**
+	 * Finds the seed of the run. The command line seed wins over the agent
+	 * file's, without either a random one is taken.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @return the seed
+	 */
+	private long findSeed(final Grid grid) {
+		if (grid.getOptions().getSeed() != null) {
+			return grid.getOptions().getSeed();
+		}
+		for (final String line : grid.getAgentLines()) {
+			if (isSeed(line)) {
+				try {
+					return Long.parseLong(line.trim().substring(SEED_PREFIX.length()).trim());
+				} catch (final NumberFormatException nfe) {
+					throw new IllegalArgumentException("Bad seed in the agent file: " + line);
+				}
+			}
+		}
+		return new SplittableRandom().nextLong();
+	}
+
+	private boolean isSeed(final String line) {
+		return line.trim().startsWith(SEED_PREFIX);
+	}
+
 	private boolean isNewAgent(final String line) {
 		try {
 			Integer.parseInt(line);
@@ -54,7 +90,7 @@ public class AgentParser {
 		for (final String line : lines) {
 			if (isNewAgent(line)) {
 				agent = findAgent(agents, line);
-			} else if (line.trim().length() > 0) {
+			} else if (line.trim().length() > 0 && !isSeed(line)) {
 				/* Read Agent's destinations. */
 				agent.getTargets().add(line.charAt(0));
 			}
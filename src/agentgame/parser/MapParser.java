@@ -1,12 +1,16 @@
 package agentgame.parser;
 
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import agentgame.entity.Building;
+import agentgame.grid.ComponentLabels;
+import agentgame.grid.DiscoveryTable;
 import agentgame.grid.Grid;
+import agentgame.grid.GridStore;
 import agentgame.grid.cell.Cell;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.Material;
@@ -14,7 +18,9 @@ import javafx.scene.paint.PhongMaterial;
 
 /**
  * MapParser parse the result from the FileParser and constructs the entities in
- * the map.
+ * the map. With a binary map file the map rows are not read: the walls and
+ * identities are mapped from the file and the buildings are made from them,
+ * named by the building descriptions of the map file.
  */
 public class MapParser {
 
@@ -104,17 +110,48 @@ public class MapParser {
 	 *            the lines
 	 */
 	private void parseMap(final Grid grid, final int mapStartsAtLine, final List<String> lines) {
-		determineMapSize(grid, mapStartsAtLine, lines);
-		for (int i = mapStartsAtLine; i < lines.size(); i++) {
-			/* Create new row for cells. */
-			final List<Cell> currentRow = new ArrayList<Cell>();
-			/* Parse line to create buildings and cells. */
-			final int mapRow = i - mapStartsAtLine;
-			parseLine(grid, currentRow, lines.get(i), mapRow);
-			/* Finally add current row to grid. */
-			grid.getCells().add(currentRow);
+		final String binaryMap = grid.getOptions().getBinaryMap();
+		if (binaryMap != null) {
+			parseBinaryMap(grid, Paths.get(binaryMap));
+		} else {
+			determineMapSize(grid, mapStartsAtLine, lines);
+			for (int i = mapStartsAtLine; i < lines.size(); i++) {
+				/* Parse line to create buildings. */
+				final int mapRow = i - mapStartsAtLine;
+				parseLine(grid, lines.get(i), mapRow);
+			}
 		}
+		/* Label the connected parts of the finished map. */
+		grid.setComponentLabels(new ComponentLabels(grid.getStore()));
+		/* Note what can be found from every cell, while only buildings are placed. */
+		grid.setDiscoveryTable(new DiscoveryTable(grid.getStore()));
+	}
 
+	/**
+	 * Maps the layers of a binary map file and creates a building on every
+	 * wall: an agent home for a digit, an important building for any other
+	 * identity and an unimportant building without one.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @param file
+	 *            the binary map file
+	 */
+	private void parseBinaryMap(final Grid grid, final Path file) {
+		grid.mapStore(file);
+		final GridStore store = grid.getStore();
+		grid.createCellDimension(grid.getSize() / store.getColumns(), grid.getSize() / store.getRows());
+		for (int id = 0; id < store.getSize(); id++) {
+			if (!store.isWall(id)) {
+				continue;
+			}
+			final char identity = store.getIdentity(id);
+			final char ch = identity == GridStore.NO_IDENTITY ? NOT_IMPORTANT_BUILDING : identity;
+			if (!Character.isDigit(ch) && !buildingNames.containsKey(String.valueOf(ch))) {
+				throw new IllegalArgumentException("No building description for: " + ch);
+			}
+			placeBuilding(grid, ch, store.rowOf(id), store.columnOf(id));
+		}
 	}
 
 	/**
@@ -133,6 +170,7 @@ public class MapParser {
 		final double width = grid.getSize() / columns;
 		final double height = grid.getSize() / rows;
 		grid.createCellDimension(width, height);
+		grid.createStore(rows, columns);
 	}
 
 	/**
@@ -140,48 +178,64 @@ public class MapParser {
 	 *
 	 * @param grid
 	 *            the grid
-	 * @param currentRow
-	 *            the current row
 	 * @param row
 	 *            the row
 	 * @param mapRow
 	 *            the map row
 	 */
-	private void parseLine(final Grid grid, final List<Cell> currentRow, final String row, final int mapRow) {
-		/* Character by character row parsing */
-		for (int i = 0; i < row.length(); i++) {
-			/* Create new cell. */
-			final Cell currentCell = new Cell(grid, mapRow, i);
-			currentRow.add(currentCell);
+	private void parseLine(final Grid grid, final String row, final int mapRow) {
+		/* Character by character row parsing, up to the map width. */
+		final int length = Math.min(row.length(), grid.getStore().getColumns());
+		for (int i = 0; i < length; i++) {
 			final char ch = row.charAt(i);
 			/* If the cell is empty continue to the next character. */
 			if (ch == EMPTY_CELL) {
 				continue;
 			}
-			Building building = null;
-			/* If cell is an Agent home. */
-			if (Character.isDigit(ch)) {
-				final String name = "Agent Home " + String.valueOf(ch);
-				building = new Building(name, i, mapRow, 1, grid.getCellDimension(), true, ch);
-				building.setColor(Color.DARKGREEN);
-				grid.getAgentHouses().put(Integer.parseInt(String.valueOf(ch)), building);
-				grid.addChild(building);
-				currentRow.get(i).setOccupant(building);
-				currentRow.get(i).setUnreachable(true);
-			} else {
-				/* Determine and create building if necessary. */
-				final String name = buildingNames.get(String.valueOf(ch));
-				final int height = buildingHeights.get(String.valueOf(ch));
-				final boolean unimportantBuilding = (ch == NOT_IMPORTANT_BUILDING);
-				building = new Building(name, i, mapRow, height, grid.getCellDimension(), !unimportantBuilding, ch);
-				if (!unimportantBuilding) {
-					building.setColor(Color.BLUEVIOLET);
-				}
-				grid.addChild(building);
-				currentRow.get(i).setOccupant(building);
-				currentRow.get(i).setUnreachable(true);
-			}
+			placeBuilding(grid, ch, mapRow, i);
+		}
+	}
 
+	/**
+	 * Creates the building of a map character on a cell.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @param ch
+	 *            the map character
+	 * @param mapRow
+	 *            the map row
+	 * @param i
+	 *            the map column
+	 */
+	private void placeBuilding(final Grid grid, final char ch, final int mapRow, final int i) {
+		final Cell currentCell = grid.getCell(mapRow, i);
+		Building building = null;
+		/* If cell is an Agent home. */
+		if (Character.isDigit(ch)) {
+			final String name = "Agent Home " + String.valueOf(ch);
+			building = new Building(name, i, mapRow, 1, grid.getCellDimension(), true, ch);
+			building.setColor(Color.DARKGREEN);
+			grid.getAgentHouses().put(Integer.parseInt(String.valueOf(ch)), building);
+			grid.addChild(building);
+			currentCell.setOccupant(building);
+			currentCell.setUnreachable(true);
+		} else {
+			/* Determine and create building if necessary. */
+			final String name = buildingNames.get(String.valueOf(ch));
+			final int height = buildingHeights.get(String.valueOf(ch));
+			final boolean unimportantBuilding = (ch == NOT_IMPORTANT_BUILDING);
+			building = new Building(name, i, mapRow, height, grid.getCellDimension(), !unimportantBuilding, ch);
+			if (!unimportantBuilding) {
+				building.setColor(Color.BLUEVIOLET);
+			}
+			grid.addChild(building);
+			currentCell.setOccupant(building);
+			currentCell.setUnreachable(true);
+		}
+		if (building.isImportant()) {
+			/* Keep the identity where it is read without the building. */
+			grid.getStore().setIdentity(currentCell.getId(), ch);
 		}
 	}
 
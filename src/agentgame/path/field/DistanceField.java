@@ -0,0 +1,123 @@
+package agentgame.path.field;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import agentgame.grid.Grid;
+import agentgame.path.point.GridPoint;
+
+/**
+ * Holds the walking distance from every cell to the closest of a set of source
+ * cells. Only the static map is considered, agents are ignored.
+ */
+public class DistanceField {
+
+	/** The distance of a cell no source can be reached from. */
+	public static final int UNREACHED = -1;
+
+	/** Row offsets of the four neighbours: left, right, up, down. */
+	private static final int[] ROW_OFFSETS = { 0, 0, -1, 1 };
+
+	/** Column offsets of the four neighbours: left, right, up, down. */
+	private static final int[] COLUMN_OFFSETS = { -1, 1, 0, 0 };
+
+	/** The grid columns. */
+	private final int columns;
+
+	/** The distance of every cell, indexed by row * columns + column. */
+	private final int[] distances;
+
+	/** The source cell indices. */
+	private final BitSet sources;
+
+	/** The number of source cells. */
+	private final int sourceCount;
+
+	/**
+	 * Instantiates a new distance field with a multi-source breadth first
+	 * search from the given sources.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @param sources
+	 *            the source cell indices
+	 */
+	public DistanceField(final Grid grid, final BitSet sources) {
+		final int rows = grid.getRows();
+		this.columns = grid.getColumns();
+		this.sources = sources;
+		this.sourceCount = sources.cardinality();
+		this.distances = new int[rows * columns];
+		Arrays.fill(distances, UNREACHED);
+
+		final int[] queue = new int[distances.length];
+		int head = 0;
+		int tail = 0;
+		for (int source = sources.nextSetBit(0); source >= 0; source = sources.nextSetBit(source + 1)) {
+			distances[source] = 0;
+			queue[tail++] = source;
+		}
+		while (head < tail) {
+			final int current = queue[head++];
+			final int row = current / columns;
+			final int column = current % columns;
+			for (int i = 0; i < ROW_OFFSETS.length; i++) {
+				final int neighborRow = row + ROW_OFFSETS[i];
+				final int neighborColumn = column + COLUMN_OFFSETS[i];
+				if (neighborRow < 0 || neighborRow >= rows || neighborColumn < 0 || neighborColumn >= columns) {
+					continue;
+				}
+				final int neighbor = neighborRow * columns + neighborColumn;
+				if (distances[neighbor] != UNREACHED) {
+					continue;
+				}
+				if (grid.getStore().isWall(neighbor)) {
+					continue;
+				}
+				distances[neighbor] = distances[current] + 1;
+				queue[tail++] = neighbor;
+			}
+		}
+	}
+
+	/**
+	 * Gets the distance of a cell to the closest source.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return the distance, or UNREACHED
+	 */
+	public int getDistance(final int row, final int column) {
+		return distances[row * columns + column];
+	}
+
+	/**
+	 * Checks whether the given points are exactly the sources of this field.
+	 *
+	 * @param points
+	 *            the points
+	 * @return true, if successful
+	 */
+	public boolean hasSources(final Set<GridPoint> points) {
+		if (points.size() != sourceCount) {
+			return false;
+		}
+		final Iterator<GridPoint> iterator = points.iterator();
+		while (iterator.hasNext()) {
+			final GridPoint point = iterator.next();
+			if (!sources.get(point.getY() * columns + point.getX())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getSourceCount() {
+		return sourceCount;
+	}
+
+}
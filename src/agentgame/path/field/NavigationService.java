@@ -0,0 +1,175 @@
+package agentgame.path.field;
+
+import java.util.BitSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import agentgame.grid.Grid;
+import agentgame.grid.GridStore;
+import agentgame.grid.MoveEnum;
+import agentgame.grid.StaticMapListener;
+import agentgame.grid.cell.Cell;
+import agentgame.path.point.GridPoint;
+
+/**
+ * Shares one distance field per building identity between all agents. The
+ * field of an identity is built lazily from every reachable cell next to an
+ * important building of that identity and dropped when the static map
+ * changes.
+ *
+ * An agent only heads to cells it knows, so a field is used only by agents
+ * that know all of its source cells. The rest keep planning with A*.
+ */
+public class NavigationService implements StaticMapListener {
+
+	/** Row offsets of the four neighbours: left, right, up, down. */
+	private static final int[] ROW_OFFSETS = { 0, 0, -1, 1 };
+
+	/** Column offsets of the four neighbours: left, right, up, down. */
+	private static final int[] COLUMN_OFFSETS = { -1, 1, 0, 0 };
+
+	/** The moves towards the four neighbours. */
+	private static final MoveEnum[] MOVES = { MoveEnum.LEFT, MoveEnum.RIGHT, MoveEnum.UP, MoveEnum.DOWN };
+
+	/** The grid. */
+	private final Grid grid;
+
+	/** The built fields by building identity. */
+	private final ConcurrentMap<Character, DistanceField> fields;
+
+	/**
+	 * Instantiates a new navigation service.
+	 *
+	 * @param grid
+	 *            the grid
+	 */
+	public NavigationService(final Grid grid) {
+		this.grid = grid;
+		this.fields = new ConcurrentHashMap<Character, DistanceField>();
+	}
+
+	/**
+	 * Gives the move that brings the agent one step closer to the closest
+	 * known target point, if the shared field can be used for what the agent
+	 * knows.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @param known
+	 *            the target points known by the agent
+	 * @param from
+	 *            the agent's current point
+	 * @return the move, or null if the field does not apply or every step
+	 *         closer is occupied
+	 */
+	public MoveEnum nextMove(final char identity, final Set<GridPoint> known, final GridPoint from) {
+		if (!covers(identity, known)) {
+			return null;
+		}
+		final DistanceField field = getField(identity);
+		final int rows = grid.getRows();
+		final int columns = grid.getColumns();
+		int best = field.getDistance(from.getY(), from.getX());
+		if (best == DistanceField.UNREACHED) {
+			best = Integer.MAX_VALUE;
+		}
+		MoveEnum bestMove = null;
+		for (int i = 0; i < MOVES.length; i++) {
+			final int row = from.getY() + ROW_OFFSETS[i];
+			final int column = from.getX() + COLUMN_OFFSETS[i];
+			if (row < 0 || row >= rows || column < 0 || column >= columns) {
+				continue;
+			}
+			final int distance = field.getDistance(row, column);
+			if (distance == DistanceField.UNREACHED || distance >= best) {
+				continue;
+			}
+			if (grid.getStore().isOccupied(row * columns + column)) {
+				continue;
+			}
+			best = distance;
+			bestMove = MOVES[i];
+		}
+		return bestMove;
+	}
+
+	/**
+	 * Checks if the shared field can be used for what the agent knows.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @param known
+	 *            the target points known by the agent
+	 * @return true, if the field leads only to known target points
+	 */
+	public boolean covers(final char identity, final Set<GridPoint> known) {
+		final DistanceField field = getField(identity);
+		return field.getSourceCount() > 0 && field.hasSources(known);
+	}
+
+	/**
+	 * Gets the field of an identity, building it if needed. Agents deciding
+	 * at the same time all get the same field.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @return the field
+	 */
+	public DistanceField getField(final char identity) {
+		final DistanceField field = fields.get(identity);
+		if (field != null) {
+			return field;
+		}
+		final DistanceField built = new DistanceField(grid, findSources(identity));
+		final DistanceField raced = fields.putIfAbsent(identity, built);
+		return raced != null ? raced : built;
+	}
+
+	/**
+	 * Finds every reachable cell next to an important building of the given
+	 * identity.
+	 *
+	 * @param identity
+	 *            the building identity
+	 * @return the source cell indices
+	 */
+	private BitSet findSources(final char identity) {
+		final int rows = grid.getRows();
+		final int columns = grid.getColumns();
+		final GridStore store = grid.getStore();
+		final BitSet sources = new BitSet(rows * columns);
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				if (store.getIdentity(row * columns + column) != identity) {
+					continue;
+				}
+				for (int i = 0; i < ROW_OFFSETS.length; i++) {
+					final int neighborRow = row + ROW_OFFSETS[i];
+					final int neighborColumn = column + COLUMN_OFFSETS[i];
+					if (neighborRow < 0 || neighborRow >= rows || neighborColumn < 0 || neighborColumn >= columns) {
+						continue;
+					}
+					final int neighbor = neighborRow * columns + neighborColumn;
+					if (!store.isWall(neighbor)) {
+						sources.set(neighbor);
+					}
+				}
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Drops every field, they are rebuilt on the next request.
+	 */
+	public void invalidate() {
+		fields.clear();
+	}
+
+	@Override
+	public void staticCellChanged(final Cell cell) {
+		invalidate();
+	}
+
+}
@@ -1,8 +1,7 @@
 package agentgame.path.point;
 
-import java.util.List;
-
 import agentgame.entity.MapEntity;
+import agentgame.grid.GridStore;
 import agentgame.grid.MoveEnum;
 
 /**
@@ -12,9 +11,21 @@ public interface GridPoint extends CartesianPoint {
 
 	public boolean isOccupied();
 
-	public List<GridPoint> getEmptyNeighboors();
+	/**
+	 * Gives the neighbours within the grid that are not occupied, as a mask
+	 * holding the {@link MoveEnum#bit()} of the move towards each of them.
+	 *
+	 * @return the neighbour mask
+	 */
+	public int getEmptyNeighborMask();
 
-	public List<GridPoint> getAllNeighboors();
+	/**
+	 * Gives the neighbours within the grid, as a mask holding the
+	 * {@link MoveEnum#bit()} of the move towards each of them.
+	 *
+	 * @return the neighbour mask
+	 */
+	public int getAllNeighborMask();
 
 	/**
 	 * Gives the GridPoint towards to move's direction.
@@ -36,6 +47,13 @@ public interface GridPoint extends CartesianPoint {
 
 	public MapEntity getOccupant();
 
+	/**
+	 * Gives the identity of the important building on this point.
+	 *
+	 * @return the identity, or {@link GridStore#NO_IDENTITY}
+	 */
+	public char getIdentity();
+
 	public void setOccupant(MapEntity entity);
 
 	public void clear();
@@ -0,0 +1,44 @@
+package agentgame.path.search;
+
+import java.util.List;
+import java.util.Set;
+
+import agentgame.path.point.GridPoint;
+
+/**
+ * A path finder whose effort can be bounded. A search that runs out of budget
+ * is suspended and resumed by the next call with the same target, as long as
+ * the starting point is still on the search tree.
+ */
+public interface AnytimePathFinder extends PathFinder {
+
+	/**
+	 * Searches with at most the given number of node expansions.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 * @param budget
+	 *            the node expansions allowed
+	 * @return the path to the reached target point or, if the search was
+	 *         suspended, to the most promising point found so far. Null if no
+	 *         target point can be reached or no step can be made yet
+	 */
+	public List<GridPoint> searchPath(GridPoint startingPoint, Set<GridPoint> target, int budget);
+
+	/**
+	 * Checks whether the last search ran out of budget.
+	 *
+	 * @return true, if suspended
+	 */
+	public boolean isSuspended();
+
+	/**
+	 * Gets the node expansions spent by the last search.
+	 *
+	 * @return the spent budget
+	 */
+	public int getSpentBudget();
+
+}
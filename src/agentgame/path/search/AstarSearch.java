@@ -1,208 +1,251 @@
 package agentgame.path.search;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
-import agentgame.grid.MoveEnum;
-import agentgame.grid.PositionTools;
+import agentgame.grid.Grid;
 import agentgame.path.point.GridPoint;
-import agentgame.path.search.heuristic.ManhattanHeuristic;
 
 /**
  * Provides Astar(A*) search related functionality.
+ *
+ * A search given a node budget stops when the budget is spent and gives the
+ * way to the expanded node with the lowest estimate instead. The open and
+ * closed sets are kept, so the next call with the same target goes on from
+ * where it stopped. The caller may have moved in the meantime: the way is
+ * then taken through the search tree from wherever the caller is on it.
  */
-public class AstarSearch {
+public class AstarSearch extends GridSearch implements AnytimePathFinder {
 
-	/** The open (frontier). */
-	private final List<GridPoint> open;
+	/** Row offsets of the four neighbours: left, right, up, down. */
+	private static final int[] ROW_OFFSETS = { 0, 0, -1, 1 };
 
-	/** The closed (visited). */
-	private final List<GridPoint> closed;
+	/** Column offsets of the four neighbours: left, right, up, down. */
+	private static final int[] COLUMN_OFFSETS = { -1, 1, 0, 0 };
 
-	/** Map holding best case scenario for each point. */
-	private final Map<GridPoint, GridPoint> cameFrom;
+	/** Returned by an expansion that ran out of budget. */
+	private static final int SUSPENDED = -2;
 
-	/** The cost so far for every point. */
-	private final Map<GridPoint, Integer> gScore;
+	/** The start of the current search tree. */
+	private int root;
 
-	/** The estimated score to the goal for each point */
-	private final Map<GridPoint, Integer> fScore;
+	/** The expanded node with the lowest estimate. */
+	private int bestNode;
 
-	private MoveEnum bestMoveSoFar;
+	/** The estimate of the best node. */
+	private int bestEstimate;
 
-	private int bestScoreSoFar;
+	/** Whether the last search ran out of budget. */
+	private boolean suspended;
+
+	/** The target of the suspended search. */
+	private Set<GridPoint> suspendedTarget;
+
+	/** The size of the target when the suspended search started. */
+	private int suspendedTargetSize;
+
+	/** The node expansions spent by the last call. */
+	private int spentBudget;
+
+	/** Marks the branch from the root to the node a path is taken to. */
+	private final BitSet branch;
 
 	/**
 	 * Instantiates a new astar search.
+	 *
+	 * @param grid
+	 *            the grid to search
 	 */
-	public AstarSearch() {
-		open = new ArrayList<GridPoint>();
-		closed = new ArrayList<GridPoint>();
-		cameFrom = new HashMap<GridPoint, GridPoint>();
-		gScore = new HashMap<GridPoint, Integer>();
-		fScore = new HashMap<GridPoint, Integer>();
-		bestScoreSoFar = -1;
-		bestMoveSoFar = null;
+	public AstarSearch(final Grid grid) {
+		super(grid);
+		branch = new BitSet();
+		suspended = false;
 	}
 
 	/**
-	 * Inits the search.
+	 * Calculates the A* shortest path at current grid state from the start to
+	 * the closest goal.
 	 *
-	 * @param startingPoint
-	 *            the starting point
-	 * @param target
-	 *            the target
-	 * @return the move enum
+	 * @param start
+	 *            the start index
+	 * @return the index of the goal reached, or -1 if none can be reached
 	 */
-	public MoveEnum search(final GridPoint startingPoint, final Set<GridPoint> target) {
-		if (target.contains(startingPoint)) {
-			System.out.println("Already on destination.");
-			return null;
-		}
-
-		/* Clear previous searches if any. */
-		clear();
-		resetSoFarFields();
-
-		final Iterator<GridPoint> iterator = target.iterator();
-		while (iterator.hasNext()) {
-			calculateNextMove(startingPoint, iterator.next());
-			clear();
-		}
-
-		return bestMoveSoFar;
+	@Override
+	protected int calculatePath(final int start) {
+		begin(start);
+		return expand(Integer.MAX_VALUE);
 	}
 
 	/**
-	 * Calculates the next move based on A* shortest path at current grid state.
+	 * Opens the start of a new search tree.
 	 *
-	 * @param startingPoint
-	 *            the starting point
-	 * @param target
-	 *            the target
-	 * @return the move enum
+	 * @param start
+	 *            the start index
 	 */
-	private void calculateNextMove(final GridPoint startingPoint, final GridPoint target) {
-
-		gScore.put(startingPoint, 0);
-		open.add(startingPoint);
+	private void begin(final int start) {
+		root = start;
+		bestNode = start;
+		bestEstimate = estimate(start / columns, start % columns);
+		gScore[start] = 0;
+		fScore[start] = bestEstimate;
+		open.insert(start, fScore[start]);
+	}
 
+	/**
+	 * Expands nodes until a goal is reached or the budget is spent.
+	 *
+	 * @param budget
+	 *            the node expansions allowed
+	 * @return the index of the goal reached, -1 if none can be reached or
+	 *         SUSPENDED
+	 */
+	private int expand(final int budget) {
+		int spent = 0;
 		while (!open.isEmpty()) {
 
-			final GridPoint current = getCurrentBestPoint();
+			if (spent >= budget) {
+				spentBudget += spent;
+				return SUSPENDED;
+			}
+			final int current = open.poll();
+			closed.set(current);
 
-			final List<GridPoint> neighbors = current.getEmptyNeighboors();
-			for (final GridPoint neighbor : neighbors) {
-				if (closed.contains(neighbor)) {
-					continue;
-				}
-				final int tentativeGScore = gScore.get(current) + 1;
-				if (!open.contains(neighbor)) {
-					open.add(neighbor);
-				} else if (tentativeGScore >= gScore.get(neighbor)) {
-					continue;
-				}
-				cameFrom.put(neighbor, current);
-				gScore.put(neighbor, tentativeGScore);
-				final int estimatedDistanceFromGoal = tentativeGScore
-						+ ManhattanHeuristic.getDistance(neighbor, target);
-				fScore.put(neighbor, estimatedDistanceFromGoal);
-				if (PositionTools.samePoint(current, target)) {
-					break;
-				}
+			if (goals.get(current)) {
+				spentBudget += spent;
+				return current;
+			}
+			expandedNodes += 1;
+			spent += 1;
+
+			final int estimate = fScore[current] - gScore[current];
+			if (estimate < bestEstimate) {
+				bestEstimate = estimate;
+				bestNode = current;
 			}
 
-			if (PositionTools.samePoint(current, target)) {
-				if (bestScoreSoFar < 0 || bestScoreSoFar > gScore.get(current)) {
-					bestScoreSoFar = gScore.get(current);
-					final List<GridPoint> path = reconstructPath(startingPoint, target);
-					bestMoveSoFar = getFirstMoveFromPath(path, startingPoint);
+			final int row = current / columns;
+			final int column = current % columns;
+			for (int i = 0; i < ROW_OFFSETS.length; i++) {
+				final int neighborRow = row + ROW_OFFSETS[i];
+				final int neighborColumn = column + COLUMN_OFFSETS[i];
+				if (!isWalkable(neighborRow, neighborColumn)) {
+					continue;
 				}
+				relax(neighborRow * columns + neighborColumn, current, gScore[current] + 1);
 			}
 		}
 
 		/* Failure scenario. */
+		spentBudget += spent;
+		return -1;
+	}
+
+	@Override
+	public List<GridPoint> searchPath(final GridPoint startingPoint, final Set<GridPoint> target,
+			final int budget) {
+		spentBudget = 0;
+		if (canResume(startingPoint, target)) {
+			final List<GridPoint> path = continueSearch(startingPoint, budget);
+			if (path == null || !path.get(0).isOccupied()) {
+				return path;
+			}
+			/* The way through the search tree got blocked, start over. */
+		}
+		if (!startSearch(startingPoint, target)) {
+			return null;
+		}
+		begin(indexOf(startingPoint));
+		suspendedTarget = target;
+		suspendedTargetSize = target.size();
+		return continueSearch(startingPoint, budget - spentBudget);
 	}
 
 	/**
-	 * Gets the current best point from the opened points and move it to closed.
+	 * Checks whether the suspended search can go on for the given call.
 	 *
-	 * @return the current best point
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 * @return true, if successful
 	 */
-	private GridPoint getCurrentBestPoint() {
-		sortOpenedList();
-		final GridPoint current = open.get(0);
-		open.remove(0);
-		closed.add(current);
-		return current;
+	private boolean canResume(final GridPoint startingPoint, final Set<GridPoint> target) {
+		if (!suspended || target != suspendedTarget || target.size() != suspendedTargetSize
+				|| rows != grid.getRows() || columns != grid.getColumns()) {
+			return false;
+		}
+		final int start = indexOf(startingPoint);
+		return start == root || closed.get(start) || open.contains(start);
 	}
 
 	/**
-	 * Sorts opened list.
+	 * Expands the current search tree within the budget and takes the way to
+	 * the goal reached or to the best node.
+	 *
+	 * @param startingPoint
+	 *            the starting point, on the search tree
+	 * @param budget
+	 *            the node expansions allowed
+	 * @return the path, or null if there is none or it has no step yet
 	 */
-	private void sortOpenedList() {
-		open.sort(new Comparator<GridPoint>() {
-			@Override
-			public int compare(final GridPoint o1, final GridPoint o2) {
-				return fScore.get(o1) - fScore.get(o2);
-			}
-		});
+	private List<GridPoint> continueSearch(final GridPoint startingPoint, final int budget) {
+		final int reached = expand(budget);
+		suspended = reached == SUSPENDED;
+		if (reached == -1) {
+			return null;
+		}
+		final List<GridPoint> path = walkTree(startingPoint, suspended ? bestNode : reached);
+		return path.isEmpty() ? null : path;
 	}
 
 	/**
-	 * Reconstructs path from finish to start based on cameFrom entries.
+	 * Takes the way between two nodes of the search tree: up from the
+	 * starting point to the branch of the destination, then down the branch.
 	 *
-	 * @param finishPoint
-	 *            the finish point
-	 * @param target
-	 * @return the list
+	 * @param startingPoint
+	 *            the starting point
+	 * @param destination
+	 *            the destination index
+	 * @return the points from the first step up to the destination
 	 */
-	private List<GridPoint> reconstructPath(final GridPoint startPoint, final GridPoint finishPoint) {
-		final List<GridPoint> path = new ArrayList<GridPoint>();
-
-		path.add(finishPoint);
-		GridPoint current = finishPoint;
-		while (!PositionTools.samePoint(startPoint, current)) {
-			current = cameFrom.get(current);
-			path.add(current);
+	private List<GridPoint> walkTree(final GridPoint startingPoint, final int destination) {
+		branch.clear();
+		for (int cell = destination; cell != root; cell = cameFrom[cell]) {
+			branch.set(cell);
 		}
+		branch.set(root);
 
+		final List<GridPoint> path = new ArrayList<GridPoint>();
+		int joint = indexOf(startingPoint);
+		while (!branch.get(joint)) {
+			joint = cameFrom[joint];
+			path.add(startingPoint.fetchGridPoint(joint / columns, joint % columns));
+		}
+		final int climbed = path.size();
+		for (int cell = destination; cell != joint; cell = cameFrom[cell]) {
+			path.add(startingPoint.fetchGridPoint(cell / columns, cell % columns));
+		}
+		Collections.reverse(path.subList(climbed, path.size()));
 		return path;
 	}
 
-	/**
-	 * Extracts the first move from the current A* given path.
-	 *
-	 * @param path
-	 *            the path
-	 * @param start
-	 *            the start
-	 * @return the first move from path
-	 */
-	private MoveEnum getFirstMoveFromPath(final List<GridPoint> path, final GridPoint start) {
-		final GridPoint first = path.get(path.size() - 2);
-		return PositionTools.getMove(first, start);
+	@Override
+	public boolean isSuspended() {
+		return suspended;
 	}
 
-	/**
-	 * Clear the structures for the next search.
-	 */
-	public void clear() {
-		open.clear();
-		closed.clear();
-		cameFrom.clear();
-		fScore.clear();
-		gScore.clear();
+	@Override
+	public int getSpentBudget() {
+		return spentBudget;
 	}
 
-	private void resetSoFarFields() {
-		bestScoreSoFar = -1;
-		bestMoveSoFar = null;
+	@Override
+	public void clear() {
+		super.clear();
+		suspended = false;
 	}
 
 }
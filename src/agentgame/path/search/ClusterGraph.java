@@ -0,0 +1,353 @@
+package agentgame.path.search;
+
+import java.util.Arrays;
+
+import agentgame.grid.Grid;
+import agentgame.grid.StaticMapListener;
+import agentgame.grid.cell.Cell;
+
+/**
+ * The abstract graph used by {@link HierarchicalSearch}. The grid is split in
+ * square clusters. Every run of reachable cells along the border of two
+ * clusters gets one or two transitions, each a pair of facing cells. The cells
+ * of the transitions are the nodes of the graph and the walking distance
+ * between every two nodes of a cluster is kept. Only the static map is
+ * considered.
+ *
+ * When a cell turns unreachable or reachable again only the borders of its
+ * cluster and the clusters touching them are computed again.
+ */
+public class ClusterGraph implements StaticMapListener {
+
+	/** The cluster side length. */
+	public static final int CLUSTER_SIZE = 10;
+
+	/** Marks two nodes of a cluster that cannot reach each other. */
+	public static final int NO_PATH = -1;
+
+	/** Runs at least this long get a transition at each end. */
+	private static final int LONG_ENTRANCE = 6;
+
+	/** The grid. */
+	private final Grid grid;
+
+	private final int rows;
+
+	private final int columns;
+
+	private final int clusterRows;
+
+	private final int clusterColumns;
+
+	/** The transitions towards the east neighbour, as (own, east) pairs. */
+	private final int[][] eastTransitions;
+
+	/** The transitions towards the south neighbour, as (own, south) pairs. */
+	private final int[][] southTransitions;
+
+	/** The sorted node cell indices of every cluster. */
+	private final int[][] nodes;
+
+	/** The distance between every two nodes of every cluster. */
+	private final int[][] costs;
+
+	/** The scan used to measure intra-cluster distances. */
+	private final ClusterScan scan;
+
+	/**
+	 * Instantiates a new cluster graph and precomputes all of it.
+	 *
+	 * @param grid
+	 *            the grid
+	 */
+	public ClusterGraph(final Grid grid) {
+		this.grid = grid;
+		this.rows = grid.getRows();
+		this.columns = grid.getColumns();
+		this.clusterRows = (rows + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+		this.clusterColumns = (columns + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+		final int clusterCount = clusterRows * clusterColumns;
+		eastTransitions = new int[clusterCount][];
+		southTransitions = new int[clusterCount][];
+		nodes = new int[clusterCount][];
+		costs = new int[clusterCount][];
+		scan = new ClusterScan(grid, CLUSTER_SIZE);
+		for (int cluster = 0; cluster < clusterCount; cluster++) {
+			eastTransitions[cluster] = findEastTransitions(cluster);
+			southTransitions[cluster] = findSouthTransitions(cluster);
+		}
+		for (int cluster = 0; cluster < clusterCount; cluster++) {
+			buildCluster(cluster);
+		}
+	}
+
+	/**
+	 * Finds the transitions between a cluster and its east neighbour.
+	 *
+	 * @param cluster
+	 *            the cluster
+	 * @return the transitions
+	 */
+	private int[] findEastTransitions(final int cluster) {
+		final int column = getColumnEnd(cluster) - 1;
+		if (column + 1 >= columns) {
+			return new int[0];
+		}
+		final int from = getRowStart(cluster);
+		final int to = getRowEnd(cluster);
+		final int[] found = new int[4 * (to - from)];
+		int count = 0;
+		int runStart = -1;
+		for (int row = from; row <= to; row++) {
+			final boolean open = row < to && isReachable(row, column) && isReachable(row, column + 1);
+			if (open && runStart < 0) {
+				runStart = row;
+			} else if (!open && runStart >= 0) {
+				final int runEnd = row - 1;
+				if (runEnd - runStart + 1 >= LONG_ENTRANCE) {
+					count = addPair(found, count, runStart * columns + column, runStart * columns + column + 1);
+					count = addPair(found, count, runEnd * columns + column, runEnd * columns + column + 1);
+				} else {
+					final int middle = (runStart + runEnd) / 2;
+					count = addPair(found, count, middle * columns + column, middle * columns + column + 1);
+				}
+				runStart = -1;
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Finds the transitions between a cluster and its south neighbour.
+	 *
+	 * @param cluster
+	 *            the cluster
+	 * @return the transitions
+	 */
+	private int[] findSouthTransitions(final int cluster) {
+		final int row = getRowEnd(cluster) - 1;
+		if (row + 1 >= rows) {
+			return new int[0];
+		}
+		final int from = getColumnStart(cluster);
+		final int to = getColumnEnd(cluster);
+		final int[] found = new int[4 * (to - from)];
+		int count = 0;
+		int runStart = -1;
+		for (int column = from; column <= to; column++) {
+			final boolean open = column < to && isReachable(row, column) && isReachable(row + 1, column);
+			if (open && runStart < 0) {
+				runStart = column;
+			} else if (!open && runStart >= 0) {
+				final int runEnd = column - 1;
+				if (runEnd - runStart + 1 >= LONG_ENTRANCE) {
+					count = addPair(found, count, row * columns + runStart, (row + 1) * columns + runStart);
+					count = addPair(found, count, row * columns + runEnd, (row + 1) * columns + runEnd);
+				} else {
+					final int middle = (runStart + runEnd) / 2;
+					count = addPair(found, count, row * columns + middle, (row + 1) * columns + middle);
+				}
+				runStart = -1;
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	private int addPair(final int[] pairs, final int count, final int own, final int other) {
+		pairs[count] = own;
+		pairs[count + 1] = other;
+		return count + 2;
+	}
+
+	/**
+	 * Collects the nodes of a cluster from the transitions on its four
+	 * borders and measures the distances between them.
+	 *
+	 * @param cluster
+	 *            the cluster
+	 */
+	private void buildCluster(final int cluster) {
+		final int clusterRow = cluster / clusterColumns;
+		final int clusterColumn = cluster % clusterColumns;
+		final int west = clusterColumn > 0 ? cluster - 1 : -1;
+		final int north = clusterRow > 0 ? cluster - clusterColumns : -1;
+		int size = eastTransitions[cluster].length / 2 + southTransitions[cluster].length / 2;
+		if (west >= 0) {
+			size += eastTransitions[west].length / 2;
+		}
+		if (north >= 0) {
+			size += southTransitions[north].length / 2;
+		}
+		int[] clusterNodes = new int[size];
+		int count = 0;
+		count = collect(eastTransitions[cluster], 0, clusterNodes, count);
+		count = collect(southTransitions[cluster], 0, clusterNodes, count);
+		if (west >= 0) {
+			count = collect(eastTransitions[west], 1, clusterNodes, count);
+		}
+		if (north >= 0) {
+			count = collect(southTransitions[north], 1, clusterNodes, count);
+		}
+		Arrays.sort(clusterNodes, 0, count);
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || clusterNodes[unique - 1] != clusterNodes[i]) {
+				clusterNodes[unique++] = clusterNodes[i];
+			}
+		}
+		clusterNodes = Arrays.copyOf(clusterNodes, unique);
+
+		final int[] clusterCosts = new int[unique * unique];
+		final int[] source = new int[1];
+		for (int i = 0; i < unique; i++) {
+			source[0] = clusterNodes[i];
+			scan.scan(this, cluster, source, 1, false);
+			for (int j = 0; j < unique; j++) {
+				final int distance = scan.getDistance(clusterNodes[j]);
+				clusterCosts[i * unique + j] = distance == ClusterScan.UNREACHED ? NO_PATH : distance;
+			}
+		}
+		nodes[cluster] = clusterNodes;
+		costs[cluster] = clusterCosts;
+	}
+
+	private int collect(final int[] pairs, final int offset, final int[] into, final int count) {
+		int added = count;
+		for (int i = offset; i < pairs.length; i += 2) {
+			into[added++] = pairs[i];
+		}
+		return added;
+	}
+
+	/**
+	 * Collects the cells across a cluster border that a node has a transition
+	 * to.
+	 *
+	 * @param cell
+	 *            the node cell index
+	 * @param into
+	 *            receives the partner cell indices, at least four long
+	 * @return the number of partners
+	 */
+	public int collectPartners(final int cell, final int[] into) {
+		final int cluster = getClusterOf(cell);
+		final int clusterRow = cluster / clusterColumns;
+		final int clusterColumn = cluster % clusterColumns;
+		int count = 0;
+		count = collectPartners(eastTransitions[cluster], 0, cell, into, count);
+		count = collectPartners(southTransitions[cluster], 0, cell, into, count);
+		if (clusterColumn > 0) {
+			count = collectPartners(eastTransitions[cluster - 1], 1, cell, into, count);
+		}
+		if (clusterRow > 0) {
+			count = collectPartners(southTransitions[cluster - clusterColumns], 1, cell, into, count);
+		}
+		return count;
+	}
+
+	private int collectPartners(final int[] pairs, final int side, final int cell, final int[] into,
+			final int count) {
+		int added = count;
+		for (int i = 0; i < pairs.length; i += 2) {
+			if (pairs[i + side] == cell) {
+				into[added++] = pairs[i + 1 - side];
+			}
+		}
+		return added;
+	}
+
+	public int getClusterOf(final int cell) {
+		return (cell / columns / CLUSTER_SIZE) * clusterColumns + (cell % columns) / CLUSTER_SIZE;
+	}
+
+	public int[] getNodes(final int cluster) {
+		return nodes[cluster];
+	}
+
+	/**
+	 * Gets the position of a cell among the nodes of its cluster.
+	 *
+	 * @param cluster
+	 *            the cluster
+	 * @param cell
+	 *            the cell index
+	 * @return the position, or a negative value if the cell is not a node
+	 */
+	public int getNodePosition(final int cluster, final int cell) {
+		return Arrays.binarySearch(nodes[cluster], cell);
+	}
+
+	/**
+	 * Gets the distance between two nodes of a cluster.
+	 *
+	 * @param cluster
+	 *            the cluster
+	 * @param from
+	 *            the position of the first node
+	 * @param to
+	 *            the position of the second node
+	 * @return the distance, or NO_PATH
+	 */
+	public int getCost(final int cluster, final int from, final int to) {
+		return costs[cluster][from * nodes[cluster].length + to];
+	}
+
+	public int getRowStart(final int cluster) {
+		return (cluster / clusterColumns) * CLUSTER_SIZE;
+	}
+
+	public int getRowEnd(final int cluster) {
+		return Math.min(getRowStart(cluster) + CLUSTER_SIZE, rows);
+	}
+
+	public int getColumnStart(final int cluster) {
+		return (cluster % clusterColumns) * CLUSTER_SIZE;
+	}
+
+	public int getColumnEnd(final int cluster) {
+		return Math.min(getColumnStart(cluster) + CLUSTER_SIZE, columns);
+	}
+
+	private boolean isReachable(final int row, final int column) {
+		return !grid.getStore().isWall(row * columns + column);
+	}
+
+	/**
+	 * Computes again the four borders of the changed cell's cluster and every
+	 * cluster whose nodes lie on them.
+	 */
+	@Override
+	public void staticCellChanged(final Cell cell) {
+		final int cluster = getClusterOf(cell.getY() * columns + cell.getX());
+		final int clusterRow = cluster / clusterColumns;
+		final int clusterColumn = cluster % clusterColumns;
+		final boolean hasWest = clusterColumn > 0;
+		final boolean hasEast = clusterColumn + 1 < clusterColumns;
+		final boolean hasNorth = clusterRow > 0;
+		final boolean hasSouth = clusterRow + 1 < clusterRows;
+
+		eastTransitions[cluster] = findEastTransitions(cluster);
+		southTransitions[cluster] = findSouthTransitions(cluster);
+		if (hasWest) {
+			eastTransitions[cluster - 1] = findEastTransitions(cluster - 1);
+		}
+		if (hasNorth) {
+			southTransitions[cluster - clusterColumns] = findSouthTransitions(cluster - clusterColumns);
+		}
+
+		buildCluster(cluster);
+		if (hasWest) {
+			buildCluster(cluster - 1);
+		}
+		if (hasEast) {
+			buildCluster(cluster + 1);
+		}
+		if (hasNorth) {
+			buildCluster(cluster - clusterColumns);
+		}
+		if (hasSouth) {
+			buildCluster(cluster + clusterColumns);
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+package agentgame.path.search;
+
+import java.util.Arrays;
+
+import agentgame.grid.Grid;
+import agentgame.grid.GridStore;
+
+/**
+ * Breadth first search that never leaves one cluster of a {@link ClusterGraph}.
+ * The arrays are sized to a single cluster and reused between scans.
+ */
+class ClusterScan {
+
+	/** Marks a cell not reached by the last scan. */
+	static final int UNREACHED = -1;
+
+	/** Row offsets of the four neighbours: left, right, up, down. */
+	private static final int[] ROW_OFFSETS = { 0, 0, -1, 1 };
+
+	/** Column offsets of the four neighbours: left, right, up, down. */
+	private static final int[] COLUMN_OFFSETS = { -1, 1, 0, 0 };
+
+	/** The grid. */
+	private final Grid grid;
+
+	/** The cluster side length. */
+	private final int clusterSize;
+
+	/** The distance of every local cell. */
+	private final int[] distances;
+
+	/** The local cell every local cell was reached from. */
+	private final int[] parents;
+
+	/** The source cell index every local cell was reached from. */
+	private final int[] origins;
+
+	/** The scan queue of local cells. */
+	private final int[] queue;
+
+	private int rowStart;
+
+	private int rowEnd;
+
+	private int columnStart;
+
+	private int columnEnd;
+
+	private int columns;
+
+	/**
+	 * Instantiates a new cluster scan.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @param clusterSize
+	 *            the cluster side length
+	 */
+	ClusterScan(final Grid grid, final int clusterSize) {
+		this.grid = grid;
+		this.clusterSize = clusterSize;
+		final int area = clusterSize * clusterSize;
+		distances = new int[area];
+		parents = new int[area];
+		origins = new int[area];
+		queue = new int[area];
+	}
+
+	/**
+	 * Scans a cluster from the given source cells.
+	 *
+	 * @param graph
+	 *            the cluster graph
+	 * @param cluster
+	 *            the cluster
+	 * @param sources
+	 *            the source cell indices, all inside the cluster
+	 * @param count
+	 *            the number of sources
+	 * @param avoidOccupants
+	 *            whether cells occupied by agents are walls too
+	 */
+	void scan(final ClusterGraph graph, final int cluster, final int[] sources, final int count,
+			final boolean avoidOccupants) {
+		rowStart = graph.getRowStart(cluster);
+		rowEnd = graph.getRowEnd(cluster);
+		columnStart = graph.getColumnStart(cluster);
+		columnEnd = graph.getColumnEnd(cluster);
+		columns = grid.getColumns();
+		final GridStore store = grid.getStore();
+		Arrays.fill(distances, UNREACHED);
+
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < count; i++) {
+			final int local = toLocal(sources[i]);
+			if (distances[local] != UNREACHED) {
+				continue;
+			}
+			distances[local] = 0;
+			parents[local] = local;
+			origins[local] = sources[i];
+			queue[tail++] = local;
+		}
+		while (head < tail) {
+			final int current = queue[head++];
+			final int row = rowStart + current / clusterSize;
+			final int column = columnStart + current % clusterSize;
+			for (int i = 0; i < ROW_OFFSETS.length; i++) {
+				final int neighborRow = row + ROW_OFFSETS[i];
+				final int neighborColumn = column + COLUMN_OFFSETS[i];
+				if (neighborRow < rowStart || neighborRow >= rowEnd || neighborColumn < columnStart
+						|| neighborColumn >= columnEnd) {
+					continue;
+				}
+				final int neighbor = (neighborRow - rowStart) * clusterSize + neighborColumn - columnStart;
+				if (distances[neighbor] != UNREACHED) {
+					continue;
+				}
+				final int cell = neighborRow * columns + neighborColumn;
+				if (avoidOccupants ? store.isOccupied(cell) : store.isWall(cell)) {
+					continue;
+				}
+				distances[neighbor] = distances[current] + 1;
+				parents[neighbor] = current;
+				origins[neighbor] = origins[current];
+				queue[tail++] = neighbor;
+			}
+		}
+	}
+
+	/**
+	 * Gets the distance of a cell of the scanned cluster.
+	 *
+	 * @param cell
+	 *            the cell index
+	 * @return the distance, or UNREACHED
+	 */
+	int getDistance(final int cell) {
+		return distances[toLocal(cell)];
+	}
+
+	/**
+	 * Gets the source a cell of the scanned cluster was reached from.
+	 *
+	 * @param cell
+	 *            the cell index
+	 * @return the source cell index
+	 */
+	int getOrigin(final int cell) {
+		return origins[toLocal(cell)];
+	}
+
+	/**
+	 * Gets the cell a cell of the scanned cluster was reached from.
+	 *
+	 * @param cell
+	 *            the cell index
+	 * @return the parent cell index
+	 */
+	int getParent(final int cell) {
+		final int parent = parents[toLocal(cell)];
+		return (rowStart + parent / clusterSize) * columns + columnStart + parent % clusterSize;
+	}
+
+	private int toLocal(final int cell) {
+		return (cell / columns - rowStart) * clusterSize + cell % columns - columnStart;
+	}
+
+}
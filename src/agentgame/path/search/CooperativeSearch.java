@@ -0,0 +1,551 @@
+package agentgame.path.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import agentgame.grid.ComponentLabels;
+import agentgame.grid.Grid;
+import agentgame.grid.MoveEnum;
+import agentgame.grid.PositionTools;
+import agentgame.grid.ReservationTable;
+import agentgame.path.field.DistanceField;
+import agentgame.path.field.NavigationService;
+import agentgame.path.point.GridPoint;
+import agentgame.path.search.heuristic.Heuristic;
+
+/**
+ * Provides windowed cooperative A* (WHCA*). One instance belongs to one agent.
+ *
+ * The search runs over (cell, tick) states a few ticks ahead, waiting in place
+ * being a move too, and avoids every cell another agent reserved in the grid's
+ * {@link ReservationTable} at that tick as well as swapping places with it.
+ * The path found is reserved in turn, so the agents planning after this one
+ * go around it. Past the window the search estimates with the shared distance
+ * field of the target's identity when the agent knows every cell it leads to.
+ * Otherwise it follows a route planned with the grid's shared A* search and
+ * estimates with the heuristic to the route point a window ahead plus the
+ * route left after it. Both see around walls, and neither keeps anything the
+ * size of the map per agent.
+ *
+ * The path is meant to be planned again every tick: the reservations of the
+ * previous call are dropped first. A window that brings the agent no closer
+ * is given up, as waiting any longer would likely deadlock.
+ */
+public class CooperativeSearch implements PathFinder {
+
+	/** How many ticks ahead the search looks and reserves. */
+	public static final int WINDOW = 8;
+
+	/** Row offsets of the four neighbours, then of waiting in place. */
+	private static final int[] ROW_OFFSETS = { 0, 0, -1, 1, 0 };
+
+	/** Column offsets of the four neighbours, then of waiting in place. */
+	private static final int[] COLUMN_OFFSETS = { -1, 1, 0, 0, 0 };
+
+	/** The grid to search. */
+	private final Grid grid;
+
+	/** The owner of this planner's reservations. */
+	private int owner;
+
+	/** The shared walking distance to the target, null if it does not apply. */
+	private DistanceField field;
+
+	/** The heuristic of the grid. */
+	private Heuristic heuristic;
+
+	/** The rows of the target points the heuristic estimates to. */
+	private int[] goalRows;
+
+	/** The columns of the target points the heuristic estimates to. */
+	private int[] goalColumns;
+
+	/** The number of those target points. */
+	private int goalCount;
+
+	/** The starting point and then the steps of the route, null for none. */
+	private List<GridPoint> route;
+
+	/** The target the route leads to. */
+	private Set<GridPoint> routeTarget;
+
+	/** The size of that target when the route was planned. */
+	private int routeTargetSize;
+
+	/** The static map changes when the route was planned. */
+	private int routeStaticChanges;
+
+	/** The index of the route point the agent stands on. */
+	private int routeIndex;
+
+	/** The row of the route point a window ahead. */
+	private int waypointRow;
+
+	/** The column of the route point a window ahead. */
+	private int waypointColumn;
+
+	/** The route steps left after that point. */
+	private int waypointRest;
+
+	/** The open states, ordered by estimate then depth. */
+	private final IndexedBinaryHeap open;
+
+	/** The cell of every state. */
+	private int[] stateCells;
+
+	/** The depth of every state, in ticks from now. */
+	private int[] stateDepths;
+
+	/** The state every state was reached from. */
+	private int[] stateParents;
+
+	/** The number of states. */
+	private int stateCount;
+
+	/** The hash of the states by cell and depth, holding state + 1. */
+	private int[] stateSlots;
+
+	/** The cells reserved by the last call, one per tick. */
+	private int[] reservedCells;
+
+	/** The tick of the first reserved cell. */
+	private int reservedFrom;
+
+	/** The number of reserved cells. */
+	private int reservedCount;
+
+	/** The grid columns. */
+	private int columns;
+
+	/**
+	 * Instantiates a new cooperative search.
+	 *
+	 * @param grid
+	 *            the grid to search, with a reservation table
+	 */
+	public CooperativeSearch(final Grid grid) {
+		this.grid = grid;
+		this.owner = ReservationTable.NO_OWNER;
+		open = new IndexedBinaryHeap(64);
+		stateCells = new int[64];
+		stateDepths = new int[64];
+		stateParents = new int[64];
+		stateSlots = new int[256];
+		reservedCells = new int[WINDOW + 1];
+		reservedCount = 0;
+		goalRows = new int[8];
+		goalColumns = new int[8];
+	}
+
+	/**
+	 * Gives the first move of the planned path.
+	 *
+	 * @return the move, or null if no target point can be reached or the
+	 *         agent waits
+	 */
+	@Override
+	public MoveEnum search(final GridPoint startingPoint, final Set<GridPoint> target) {
+		final List<GridPoint> path = searchPath(startingPoint, target);
+		if (path == null) {
+			return null;
+		}
+		return startingPoint.getMoveByGridPoint(path.get(0));
+	}
+
+	/**
+	 * Plans and reserves the next ticks, estimating with the grid's heuristic.
+	 *
+	 * @return one point per tick, the same point again for a wait, up to the
+	 *         reached target point or the end of the window. Null if no
+	 *         target point can be reached
+	 */
+	@Override
+	public List<GridPoint> searchPath(final GridPoint startingPoint, final Set<GridPoint> target) {
+		return searchPath(startingPoint, null, target);
+	}
+
+	/**
+	 * Plans and reserves the next ticks.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param identity
+	 *            the building identity of the target, null if not known
+	 * @param target
+	 *            the target
+	 * @return one point per tick, the same point again for a wait, up to the
+	 *         reached target point or the end of the window. Null if no
+	 *         target point can be reached
+	 */
+	public List<GridPoint> searchPath(final GridPoint startingPoint, final Character identity,
+			final Set<GridPoint> target) {
+		final ReservationTable reservations = grid.getReservations();
+		if (owner == ReservationTable.NO_OWNER) {
+			owner = reservations.register();
+		}
+		release(reservations);
+		if (target.contains(startingPoint)) {
+			return null;
+		}
+		columns = grid.getColumns();
+		if (!prepareEstimate(startingPoint, identity, target)) {
+			return null;
+		}
+		final int now = reservations.getTime();
+		final int start = startingPoint.getY() * columns + startingPoint.getX();
+		final int last = calculatePath(reservations, start, now);
+		if (last < 0 || !makesProgress(start, stateCells[last])) {
+			return null;
+		}
+
+		final int length = stateDepths[last];
+		final List<GridPoint> path = new ArrayList<GridPoint>(length);
+		for (int i = 0; i < length; i++) {
+			path.add(null);
+		}
+		reservedFrom = now - 1;
+		reservedCount = length + 1;
+		for (int state = last; state >= 0; state = stateParents[state]) {
+			final int cell = stateCells[state];
+			final int depth = stateDepths[state];
+			reservedCells[depth] = cell;
+			reservations.reserve(cell, reservedFrom + depth, owner);
+			if (depth > 0) {
+				path.set(depth - 1, startingPoint.fetchGridPoint(cell / columns, cell % columns));
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Searches the states of the window from the start.
+	 *
+	 * @param reservations
+	 *            the reservation table
+	 * @param start
+	 *            the start index
+	 * @param now
+	 *            the current tick
+	 * @return the state reaching a target point or the end of the window, or -1
+	 */
+	private int calculatePath(final ReservationTable reservations, final int start, final int now) {
+		open.clear();
+		stateCount = 0;
+		Arrays.fill(stateSlots, 0);
+		final int first = addState(start, 0, -1);
+		open.insert(first, 0);
+
+		while (!open.isEmpty()) {
+			final int state = open.poll();
+			final int cell = stateCells[state];
+			final int depth = stateDepths[state];
+			final int row = cell / columns;
+			final int column = cell % columns;
+			if (depth == WINDOW || (depth > 0 && isGoal(row, column))) {
+				return state;
+			}
+			for (int i = 0; i < ROW_OFFSETS.length; i++) {
+				final int nextRow = row + ROW_OFFSETS[i];
+				final int nextColumn = column + COLUMN_OFFSETS[i];
+				if (nextRow < 0 || nextRow >= grid.getRows() || nextColumn < 0 || nextColumn >= columns) {
+					continue;
+				}
+				final int estimate = estimate(nextRow, nextColumn);
+				if (estimate == DistanceField.UNREACHED) {
+					continue;
+				}
+				final int next = nextRow * columns + nextColumn;
+				if (findState(next, depth + 1) >= 0
+						|| !canEnter(reservations, start, cell, next, now + depth)) {
+					continue;
+				}
+				final int added = addState(next, depth + 1, state);
+				open.insert(added, priority(depth + 1, estimate));
+			}
+		}
+
+		/* Failure scenario. */
+		return -1;
+	}
+
+	/**
+	 * Checks that the window ends closer to the target than it starts. Agents
+	 * waiting on each other's waits would otherwise wait forever, so such a
+	 * plan is not reserved and the agent is left to step aside.
+	 *
+	 * @param start
+	 *            the start index
+	 * @param end
+	 *            the cell the window ends at
+	 * @return true, if successful
+	 */
+	private boolean makesProgress(final int start, final int end) {
+		final int from = estimate(start / columns, start % columns);
+		final int to = estimate(end / columns, end % columns);
+		return from == DistanceField.UNREACHED || to < from;
+	}
+
+	/**
+	 * Checks that a step does not run into another agent.
+	 *
+	 * @param reservations
+	 *            the reservation table
+	 * @param start
+	 *            the start index
+	 * @param from
+	 *            the cell stepped from
+	 * @param to
+	 *            the cell stepped to, or the same cell for a wait
+	 * @param tick
+	 *            the tick the step ends at
+	 * @return true, if successful
+	 */
+	private boolean canEnter(final ReservationTable reservations, final int start, final int from, final int to,
+			final int tick) {
+		final int holder = reservations.getOwner(to, tick);
+		if (holder != ReservationTable.NO_OWNER && holder != owner) {
+			return false;
+		}
+		final int swapper = reservations.getOwner(from, tick);
+		if (swapper != ReservationTable.NO_OWNER && swapper != owner
+				&& reservations.getOwner(to, tick - 1) == swapper) {
+			return false;
+		}
+		if (to == start || !grid.getStore().isOccupied(to)) {
+			return true;
+		}
+		/*
+		 * The first step is taken right away, so the cell must be free now.
+		 * Later on only agents that do not reserve are kept as obstacles.
+		 */
+		final int now = reservations.getTime();
+		return tick > now && (reservations.getOwner(to, now - 1) != ReservationTable.NO_OWNER
+				|| reservations.getOwner(to, now) != ReservationTable.NO_OWNER);
+	}
+
+	/**
+	 * Orders states by estimate, deeper states first on ties.
+	 *
+	 * @param depth
+	 *            the depth
+	 * @param estimate
+	 *            the distance left
+	 * @return the priority
+	 */
+	private long priority(final int depth, final int estimate) {
+		return ((long) (depth + estimate) << 8) | (WINDOW - depth);
+	}
+
+	/**
+	 * Picks how the distance to the target is estimated. The shared field of
+	 * the identity is used when it leads only to known target points.
+	 * Otherwise the target points that can be stepped on and are not walled
+	 * off from the start are the goals, and the route to them is followed.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param identity
+	 *            the building identity of the target, or null
+	 * @param target
+	 *            the target
+	 * @return false, if no target point can be reached
+	 */
+	private boolean prepareEstimate(final GridPoint startingPoint, final Character identity,
+			final Set<GridPoint> target) {
+		final NavigationService navigation = grid.getNavigation();
+		if (identity != null && navigation.covers(identity, target)) {
+			field = navigation.getField(identity);
+			route = null;
+			return true;
+		}
+		field = null;
+		heuristic = grid.getHeuristic();
+		goalCount = 0;
+		if (goalRows.length < target.size()) {
+			goalRows = new int[target.size()];
+			goalColumns = new int[target.size()];
+		}
+		final ComponentLabels components = grid.getComponentLabels();
+		final Iterator<GridPoint> iterator = target.iterator();
+		while (iterator.hasNext()) {
+			final GridPoint point = iterator.next();
+			if (grid.getStore().isWall(point.getY() * columns + point.getX())
+					|| !components.isConnected(startingPoint, point)) {
+				continue;
+			}
+			goalRows[goalCount] = point.getY();
+			goalColumns[goalCount] = point.getX();
+			goalCount += 1;
+		}
+		if (goalCount == 0) {
+			return false;
+		}
+		followRoute(startingPoint, target);
+		return true;
+	}
+
+	/**
+	 * Finds the agent on its route and the point a window ahead. A new route
+	 * is planned when the agent left the route, the target grew or the
+	 * static map changed.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 */
+	private void followRoute(final GridPoint startingPoint, final Set<GridPoint> target) {
+		if (!findOnRoute(startingPoint, target)) {
+			route = null;
+			final List<GridPoint> steps = grid.getRouteSearch().searchPath(startingPoint, target);
+			if (steps == null) {
+				/* Only the heuristic to the goals is left. */
+				return;
+			}
+			route = new ArrayList<GridPoint>(steps.size() + 1);
+			route.add(startingPoint);
+			route.addAll(steps);
+			routeTarget = target;
+			routeTargetSize = target.size();
+			routeStaticChanges = grid.getStaticChanges();
+			routeIndex = 0;
+		}
+		final int waypoint = Math.min(routeIndex + WINDOW, route.size() - 1);
+		waypointRow = route.get(waypoint).getY();
+		waypointColumn = route.get(waypoint).getX();
+		waypointRest = route.size() - 1 - waypoint;
+	}
+
+	/**
+	 * Finds the agent on the current route, at most a window ahead of where
+	 * it was.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 * @return false, if a new route is needed
+	 */
+	private boolean findOnRoute(final GridPoint startingPoint, final Set<GridPoint> target) {
+		if (route == null || target != routeTarget || target.size() != routeTargetSize
+				|| grid.getStaticChanges() != routeStaticChanges) {
+			return false;
+		}
+		final int last = Math.min(route.size() - 1, routeIndex + WINDOW);
+		for (int i = routeIndex; i <= last; i++) {
+			if (PositionTools.samePoint(route.get(i), startingPoint)) {
+				routeIndex = i;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Estimates the walking distance from a cell to the closest target point.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return the distance, or UNREACHED for a cell that cannot be stepped on
+	 */
+	private int estimate(final int row, final int column) {
+		if (field != null) {
+			return field.getDistance(row, column);
+		}
+		if (grid.getStore().isWall(row * columns + column)) {
+			return DistanceField.UNREACHED;
+		}
+		if (route != null) {
+			return heuristic.estimate(row, column, waypointRow, waypointColumn) + waypointRest;
+		}
+		int best = Integer.MAX_VALUE;
+		for (int i = 0; i < goalCount; i++) {
+			final int distance = heuristic.estimate(row, column, goalRows[i], goalColumns[i]);
+			if (distance < best) {
+				best = distance;
+			}
+		}
+		return best;
+	}
+
+	private boolean isGoal(final int row, final int column) {
+		if (field != null) {
+			return field.getDistance(row, column) == 0;
+		}
+		for (int i = 0; i < goalCount; i++) {
+			if (goalRows[i] == row && goalColumns[i] == column) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Drops the reservations of the last call still held.
+	 *
+	 * @param reservations
+	 *            the reservation table
+	 */
+	private void release(final ReservationTable reservations) {
+		for (int i = 0; i < reservedCount; i++) {
+			reservations.release(reservedCells[i], reservedFrom + i, owner);
+		}
+		reservedCount = 0;
+	}
+
+	private int addState(final int cell, final int depth, final int parent) {
+		if (stateCount == stateCells.length) {
+			final int capacity = 2 * stateCount;
+			stateCells = Arrays.copyOf(stateCells, capacity);
+			stateDepths = Arrays.copyOf(stateDepths, capacity);
+			stateParents = Arrays.copyOf(stateParents, capacity);
+			open.ensureCapacity(capacity);
+		}
+		if (2 * stateCount >= stateSlots.length) {
+			rehash();
+		}
+		final int state = stateCount++;
+		stateCells[state] = cell;
+		stateDepths[state] = depth;
+		stateParents[state] = parent;
+		insertSlot(state);
+		return state;
+	}
+
+	private int findState(final int cell, final int depth) {
+		final int mask = stateSlots.length - 1;
+		for (int slot = hash(cell, depth) & mask; stateSlots[slot] != 0; slot = (slot + 1) & mask) {
+			final int state = stateSlots[slot] - 1;
+			if (stateCells[state] == cell && stateDepths[state] == depth) {
+				return state;
+			}
+		}
+		return -1;
+	}
+
+	private void insertSlot(final int state) {
+		final int mask = stateSlots.length - 1;
+		int slot = hash(stateCells[state], stateDepths[state]) & mask;
+		while (stateSlots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		stateSlots[slot] = state + 1;
+	}
+
+	private void rehash() {
+		stateSlots = new int[2 * stateSlots.length];
+		for (int state = 0; state < stateCount; state++) {
+			insertSlot(state);
+		}
+	}
+
+	private int hash(final int cell, final int depth) {
+		return (cell * (WINDOW + 1) + depth) * 0x9E3779B1 >>> 7;
+	}
+
+}
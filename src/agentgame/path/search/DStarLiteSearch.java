@@ -0,0 +1,366 @@
+package agentgame.path.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import agentgame.grid.Grid;
+import agentgame.grid.MoveEnum;
+import agentgame.grid.OccupancyLog;
+import agentgame.grid.PositionTools;
+import agentgame.path.point.GridPoint;
+import agentgame.path.search.heuristic.Heuristic;
+
+/**
+ * Provides D* Lite incremental search. One instance belongs to one agent.
+ *
+ * The search runs backwards from all the target points to the agent and is
+ * kept between calls. On every call only the cells read from the grid's
+ * {@link OccupancyLog} since the last call, and the cells next to them, are
+ * repaired. It starts over when the target changes or the log no longer
+ * holds every change since the last call.
+ *
+ * The keys are estimated with the grid's heuristic. The key modifier adds up
+ * the estimates between the starts, so the heuristic must be consistent, as
+ * the Manhattan distance and ALT are. Landmarks are measured again when the
+ * static map changes, so the search starts over then too.
+ */
+public class DStarLiteSearch implements PathFinder {
+
+	/** The cost of a blocked step and the score of an unreached cell. */
+	private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+	/** Row offsets of the four neighbours: left, right, up, down. */
+	private static final int[] ROW_OFFSETS = { 0, 0, -1, 1 };
+
+	/** Column offsets of the four neighbours: left, right, up, down. */
+	private static final int[] COLUMN_OFFSETS = { -1, 1, 0, 0 };
+
+	/** The grid to search. */
+	private final Grid grid;
+
+	/** The inconsistent cells, ordered by key. */
+	private final IndexedBinaryHeap open;
+
+	/** The goal indices. */
+	private final BitSet goals;
+
+	/** The number of goals. */
+	private int goalCount;
+
+	/** The distance to the goals of every cell. */
+	private int[] gScore;
+
+	/** The one step lookahead distance to the goals of every cell. */
+	private int[] rhs;
+
+	/** The grid rows when the search started. */
+	private int rows;
+
+	/** The grid columns when the search started. */
+	private int columns;
+
+	/** The start of the last call. */
+	private int start;
+
+	/** The key modifier, grows as the start moves. */
+	private int keyModifier;
+
+	/** The log position read up to. */
+	private long logPosition;
+
+	/** Whether a search is kept. */
+	private boolean initialized;
+
+	/** The heuristic the kept search estimated with. */
+	private Heuristic heuristic;
+
+	/** The static map changes of the grid when the search started. */
+	private int staticChanges;
+
+	/**
+	 * Instantiates a new D* Lite search.
+	 *
+	 * @param grid
+	 *            the grid to search
+	 */
+	public DStarLiteSearch(final Grid grid) {
+		this.grid = grid;
+		open = new IndexedBinaryHeap(0);
+		goals = new BitSet();
+		gScore = new int[0];
+		rhs = new int[0];
+		initialized = false;
+	}
+
+	@Override
+	public MoveEnum search(final GridPoint startingPoint, final Set<GridPoint> target) {
+		final List<GridPoint> path = searchPath(startingPoint, target);
+		if (path == null) {
+			return null;
+		}
+		return startingPoint.getMoveByGridPoint(path.get(0));
+	}
+
+	/**
+	 * Repairs the kept search and follows the distances from the starting
+	 * point. The path may stop short of the target where the repaired scores
+	 * do not lead on, the caller then asks again.
+	 */
+	@Override
+	public List<GridPoint> searchPath(final GridPoint startingPoint, final Set<GridPoint> target) {
+		if (target.contains(startingPoint)) {
+			return null;
+		}
+		if (!grid.getComponentLabels().canReach(startingPoint, target)) {
+			return null;
+		}
+		final OccupancyLog log = grid.getOccupancyLog();
+		if (!initialized || !hasGoals(target) || !log.holdsChangesFrom(logPosition) || rows != grid.getRows()
+				|| columns != grid.getColumns() || heuristic != grid.getHeuristic()
+				|| staticChanges != grid.getStaticChanges()) {
+			initialize(startingPoint, target);
+		} else {
+			final int previousStart = start;
+			start = indexOf(startingPoint);
+			if (start != previousStart) {
+				keyModifier += distance(previousStart, start);
+				updateAround(previousStart);
+				updateAround(start);
+			}
+			for (long at = logPosition; at < log.getPosition(); at++) {
+				updateAround(log.getChange(at));
+			}
+		}
+		logPosition = log.getPosition();
+		computeShortestPath();
+		return extractPath(startingPoint);
+	}
+
+	/**
+	 * Starts a new search towards the given target.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 */
+	private void initialize(final GridPoint startingPoint, final Set<GridPoint> target) {
+		rows = grid.getRows();
+		columns = grid.getColumns();
+		heuristic = grid.getHeuristic();
+		staticChanges = grid.getStaticChanges();
+		final int size = rows * columns;
+		if (gScore.length < size) {
+			gScore = new int[size];
+			rhs = new int[size];
+			open.ensureCapacity(size);
+		}
+		Arrays.fill(gScore, INFINITY);
+		Arrays.fill(rhs, INFINITY);
+		open.clear();
+		goals.clear();
+		goalCount = 0;
+		keyModifier = 0;
+		start = indexOf(startingPoint);
+		final Iterator<GridPoint> iterator = target.iterator();
+		while (iterator.hasNext()) {
+			goals.set(indexOf(iterator.next()));
+			goalCount += 1;
+		}
+		for (int goal = goals.nextSetBit(0); goal >= 0; goal = goals.nextSetBit(goal + 1)) {
+			updateVertex(goal);
+		}
+		initialized = true;
+	}
+
+	/**
+	 * Checks whether the given target points are exactly the kept goals.
+	 *
+	 * @param target
+	 *            the target
+	 * @return true, if successful
+	 */
+	private boolean hasGoals(final Set<GridPoint> target) {
+		if (target.size() != goalCount) {
+			return false;
+		}
+		final Iterator<GridPoint> iterator = target.iterator();
+		while (iterator.hasNext()) {
+			if (!goals.get(indexOf(iterator.next()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Processes cells until the start is consistent and no cell with a lower
+	 * key is left.
+	 */
+	private void computeShortestPath() {
+		while (!open.isEmpty() && (open.peekPriority() < calculateKey(start) || rhs[start] != gScore[start])) {
+			final long oldKey = open.peekPriority();
+			final int current = open.poll();
+			final long newKey = calculateKey(current);
+			if (oldKey < newKey) {
+				open.insert(current, newKey);
+			} else if (gScore[current] > rhs[current]) {
+				gScore[current] = rhs[current];
+				updateNeighbors(current);
+			} else {
+				gScore[current] = INFINITY;
+				updateVertex(current);
+				updateNeighbors(current);
+			}
+		}
+	}
+
+	/**
+	 * Recomputes a cell and its four neighbours.
+	 *
+	 * @param cell
+	 *            the cell index
+	 */
+	private void updateAround(final int cell) {
+		updateVertex(cell);
+		updateNeighbors(cell);
+	}
+
+	private void updateNeighbors(final int cell) {
+		final int row = cell / columns;
+		final int column = cell % columns;
+		for (int i = 0; i < ROW_OFFSETS.length; i++) {
+			final int neighborRow = row + ROW_OFFSETS[i];
+			final int neighborColumn = column + COLUMN_OFFSETS[i];
+			if (PositionTools.checkCell(grid, neighborRow, neighborColumn)) {
+				updateVertex(neighborRow * columns + neighborColumn);
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the lookahead distance of a cell and puts it in the open list
+	 * if it became inconsistent.
+	 *
+	 * @param cell
+	 *            the cell index
+	 */
+	private void updateVertex(final int cell) {
+		if (goals.get(cell)) {
+			rhs[cell] = isWalkable(cell) ? 0 : INFINITY;
+		} else {
+			rhs[cell] = bestSuccessorScore(cell);
+		}
+		if (open.contains(cell)) {
+			open.remove(cell);
+		}
+		if (gScore[cell] != rhs[cell]) {
+			open.insert(cell, calculateKey(cell));
+		}
+	}
+
+	/**
+	 * Gives the lowest step cost plus distance over the four neighbours.
+	 *
+	 * @param cell
+	 *            the cell index
+	 * @return the score, or INFINITY
+	 */
+	private int bestSuccessorScore(final int cell) {
+		if (!isWalkable(cell)) {
+			return INFINITY;
+		}
+		final int row = cell / columns;
+		final int column = cell % columns;
+		int best = INFINITY;
+		for (int i = 0; i < ROW_OFFSETS.length; i++) {
+			final int neighborRow = row + ROW_OFFSETS[i];
+			final int neighborColumn = column + COLUMN_OFFSETS[i];
+			if (!PositionTools.checkEmptyCell(grid, neighborRow, neighborColumn)) {
+				continue;
+			}
+			final int score = gScore[neighborRow * columns + neighborColumn];
+			if (score < INFINITY && score + 1 < best) {
+				best = score + 1;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Follows the lowest distance neighbours from the start.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @return the path, or null if no target point can be reached
+	 */
+	private List<GridPoint> extractPath(final GridPoint startingPoint) {
+		if (rhs[start] >= INFINITY) {
+			return null;
+		}
+		final List<GridPoint> path = new ArrayList<GridPoint>();
+		int current = start;
+		while (!goals.get(current)) {
+			final int row = current / columns;
+			final int column = current % columns;
+			int next = -1;
+			int best = current == start ? rhs[current] : gScore[current];
+			for (int i = 0; i < ROW_OFFSETS.length; i++) {
+				final int neighborRow = row + ROW_OFFSETS[i];
+				final int neighborColumn = column + COLUMN_OFFSETS[i];
+				if (!PositionTools.checkEmptyCell(grid, neighborRow, neighborColumn)) {
+					continue;
+				}
+				final int neighbor = neighborRow * columns + neighborColumn;
+				if (gScore[neighbor] + 1 <= best) {
+					best = gScore[neighbor];
+					next = neighbor;
+				}
+			}
+			if (next < 0) {
+				break;
+			}
+			path.add(startingPoint.fetchGridPoint(next / columns, next % columns));
+			current = next;
+		}
+		return path.isEmpty() ? null : path;
+	}
+
+	/**
+	 * Gives the key of a cell, the lexicographic pair (min(g, rhs) + h + km,
+	 * min(g, rhs)) packed in a long.
+	 *
+	 * @param cell
+	 *            the cell index
+	 * @return the key
+	 */
+	private long calculateKey(final int cell) {
+		final int score = Math.min(gScore[cell], rhs[cell]);
+		final long first = (long) score + distance(start, cell) + keyModifier;
+		return (first << 32) | score;
+	}
+
+	/**
+	 * Checks if a cell can be stepped on. The agent's own cell always can.
+	 *
+	 * @param cell
+	 *            the cell index
+	 * @return true, if successful
+	 */
+	private boolean isWalkable(final int cell) {
+		return cell == start || PositionTools.checkEmptyCell(grid, cell / columns, cell % columns);
+	}
+
+	private int distance(final int from, final int to) {
+		return heuristic.estimate(from / columns, from % columns, to / columns, to % columns);
+	}
+
+	private int indexOf(final GridPoint point) {
+		return point.getY() * columns + point.getX();
+	}
+
+}
@@ -0,0 +1,368 @@
+package agentgame.path.search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import agentgame.grid.ComponentLabels;
+import agentgame.grid.Grid;
+import agentgame.grid.MoveEnum;
+import agentgame.grid.PositionTools;
+import agentgame.path.point.GridPoint;
+import agentgame.path.search.heuristic.Heuristic;
+
+/**
+ * Holds what best-first searches over the grid have in common.
+ *
+ * Nodes are keyed by their dense cell index (row * columns + column) and all
+ * per node state lives in primitive arrays sized to the grid. Scores are only
+ * read for nodes opened during the current search, so the arrays never need
+ * to be cleared between searches. A node's cameFrom entry may be any cell on
+ * the same row or column, which lets searches that skip over cells share the
+ * path reconstruction.
+ */
+public abstract class GridSearch implements PathFinder {
+
+	/** The grid to search. */
+	protected final Grid grid;
+
+	/** The open (frontier), ordered by fScore. */
+	protected final IndexedBinaryHeap open;
+
+	/** The closed (visited). */
+	protected final BitSet closed;
+
+	/** The best case predecessor index for each node. */
+	protected int[] cameFrom;
+
+	/** The cost so far for every node. */
+	protected int[] gScore;
+
+	/** The estimated score to the goal for each node. */
+	protected int[] fScore;
+
+	/** The grid rows when the search was prepared. */
+	protected int rows;
+
+	/** The grid columns when the search was prepared. */
+	protected int columns;
+
+	/** The goal indices. */
+	protected final BitSet goals;
+
+	/** The rows of the reachable goals. */
+	private int[] goalRows;
+
+	/** The columns of the reachable goals. */
+	private int[] goalColumns;
+
+	/** The number of reachable goals. */
+	private int goalCount;
+
+	/** The heuristic of the grid. */
+	private Heuristic heuristic;
+
+	/** The nodes expanded by the last search. */
+	protected int expandedNodes;
+
+	/**
+	 * Instantiates a new grid search.
+	 *
+	 * @param grid
+	 *            the grid to search
+	 */
+	protected GridSearch(final Grid grid) {
+		this.grid = grid;
+		open = new IndexedBinaryHeap(0);
+		closed = new BitSet();
+		goals = new BitSet();
+		cameFrom = new int[0];
+		gScore = new int[0];
+		fScore = new int[0];
+		goalRows = new int[0];
+		goalColumns = new int[0];
+		goalCount = 0;
+		expandedNodes = 0;
+	}
+
+	/**
+	 * Inits the search. All the target points are searched at once and the
+	 * first one popped from the frontier is the closest.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 * @return the move enum
+	 */
+	@Override
+	public MoveEnum search(final GridPoint startingPoint, final Set<GridPoint> target) {
+		final int goal = searchGoal(startingPoint, target);
+		if (goal < 0) {
+			return null;
+		}
+		return getFirstMoveFromPath(indexOf(startingPoint), goal);
+	}
+
+	@Override
+	public List<GridPoint> searchPath(final GridPoint startingPoint, final Set<GridPoint> target) {
+		final int goal = searchGoal(startingPoint, target);
+		if (goal < 0) {
+			return null;
+		}
+		return reconstructPath(startingPoint, goal);
+	}
+
+	/**
+	 * Runs the search and gives the goal reached.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 * @return the index of the goal reached, or -1 if none can be reached
+	 */
+	private int searchGoal(final GridPoint startingPoint, final Set<GridPoint> target) {
+		if (!startSearch(startingPoint, target)) {
+			return -1;
+		}
+		return calculatePath(indexOf(startingPoint));
+	}
+
+	/**
+	 * Clears the previous search and sets up a new one.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 * @return false, if there is nothing to search for
+	 */
+	protected boolean startSearch(final GridPoint startingPoint, final Set<GridPoint> target) {
+		if (target.contains(startingPoint)) {
+			System.out.println("Already on destination.");
+			return false;
+		}
+
+		/* Clear previous searches if any. */
+		clear();
+		prepare();
+		setGoals(startingPoint, target);
+		return goalCount > 0;
+	}
+
+	/**
+	 * Calculates the shortest path at current grid state from the start to
+	 * the closest goal.
+	 *
+	 * @param start
+	 *            the start index
+	 * @return the index of the goal reached, or -1 if none can be reached
+	 */
+	protected abstract int calculatePath(int start);
+
+	/**
+	 * Keeps the target points that can be stepped on as the goals of the
+	 * search. Occupied points and points walled off from the start are never
+	 * reached, so they would only weaken the heuristic. When none is left the
+	 * search is not run at all.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 */
+	private void setGoals(final GridPoint startingPoint, final Set<GridPoint> target) {
+		final ComponentLabels components = grid.getComponentLabels();
+		if (goalRows.length < target.size()) {
+			goalRows = new int[target.size()];
+			goalColumns = new int[target.size()];
+		}
+		final Iterator<GridPoint> iterator = target.iterator();
+		while (iterator.hasNext()) {
+			final GridPoint point = iterator.next();
+			if (point.isOccupied() || !components.isConnected(startingPoint, point)) {
+				continue;
+			}
+			goalRows[goalCount] = point.getY();
+			goalColumns[goalCount] = point.getX();
+			goalCount += 1;
+			goals.set(indexOf(point));
+		}
+	}
+
+	/**
+	 * Opens a node or lowers its score if the new cost is better.
+	 *
+	 * @param node
+	 *            the node
+	 * @param parent
+	 *            the node it is reached from
+	 * @param cost
+	 *            the cost so far of the node through the parent
+	 */
+	protected void relax(final int node, final int parent, final int cost) {
+		if (closed.get(node)) {
+			return;
+		}
+		final boolean opened = open.contains(node);
+		if (opened && cost >= gScore[node]) {
+			return;
+		}
+		cameFrom[node] = parent;
+		gScore[node] = cost;
+		fScore[node] = cost + estimate(node / columns, node % columns);
+		if (opened) {
+			open.decreaseKey(node, fScore[node]);
+		} else {
+			open.insert(node, fScore[node]);
+		}
+	}
+
+	/**
+	 * Estimates the distance to the closest goal. The minimum of admissible
+	 * estimates is itself admissible.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return the estimated distance
+	 */
+	protected int estimate(final int row, final int column) {
+		int best = Integer.MAX_VALUE;
+		for (int i = 0; i < goalCount; i++) {
+			final int distance = heuristic.estimate(row, column, goalRows[i], goalColumns[i]);
+			if (distance < best) {
+				best = distance;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Checks if a position is within the grid and can be stepped on.
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return true, if successful
+	 */
+	protected boolean isWalkable(final int row, final int column) {
+		return PositionTools.checkEmptyCell(grid, row, column);
+	}
+
+	/**
+	 * Reconstructs path from finish to start based on cameFrom entries.
+	 *
+	 * @param startPoint
+	 *            the start point
+	 * @param finish
+	 *            the finish index
+	 * @return the points from the first step up to the finish
+	 */
+	private List<GridPoint> reconstructPath(final GridPoint startPoint, final int finish) {
+		final int start = indexOf(startPoint);
+		final List<GridPoint> path = new ArrayList<GridPoint>();
+		int current = finish;
+		while (current != start) {
+			final int parent = cameFrom[current];
+			final int step = getStep(current, parent);
+			for (int cell = current; cell != parent; cell -= step) {
+				path.add(startPoint.fetchGridPoint(cell / columns, cell % columns));
+			}
+			current = parent;
+		}
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * Walks the cameFrom links back from the finish and extracts the first
+	 * move out of the start.
+	 *
+	 * @param start
+	 *            the start index
+	 * @param finish
+	 *            the finish index
+	 * @return the first move from path
+	 */
+	private MoveEnum getFirstMoveFromPath(final int start, final int finish) {
+		int first = finish;
+		while (cameFrom[first] != start) {
+			first = cameFrom[first];
+		}
+		final int step = getStep(first, start);
+		if (step == -1) {
+			return MoveEnum.LEFT;
+		} else if (step == 1) {
+			return MoveEnum.RIGHT;
+		} else if (step < 0) {
+			return MoveEnum.UP;
+		} else {
+			return MoveEnum.DOWN;
+		}
+	}
+
+	/**
+	 * Gives the index difference of one step from a cell towards another cell
+	 * on the same row or column.
+	 *
+	 * @param to
+	 *            the to index
+	 * @param from
+	 *            the from index
+	 * @return -1 or 1 along a row, -columns or columns along a column
+	 */
+	private int getStep(final int to, final int from) {
+		if (to / columns == from / columns) {
+			return to > from ? 1 : -1;
+		}
+		return to > from ? columns : -columns;
+	}
+
+	protected int indexOf(final GridPoint point) {
+		return point.getY() * columns + point.getX();
+	}
+
+	/**
+	 * Sizes the arrays to the grid.
+	 */
+	private void prepare() {
+		rows = grid.getRows();
+		columns = grid.getColumns();
+		heuristic = grid.getHeuristic();
+		final int size = rows * columns;
+		if (gScore.length < size) {
+			cameFrom = new int[size];
+			gScore = new int[size];
+			fScore = new int[size];
+			open.ensureCapacity(size);
+		}
+	}
+
+	/**
+	 * Clear the structures for the next search.
+	 */
+	public void clear() {
+		open.clear();
+		closed.clear();
+		goals.clear();
+		goalCount = 0;
+		expandedNodes = 0;
+	}
+
+	/**
+	 * Gets the nodes expanded by the last search.
+	 *
+	 * @return the expanded nodes
+	 */
+	public int getExpandedNodes() {
+		return expandedNodes;
+	}
+
+}
@@ -0,0 +1,347 @@
+package agentgame.path.search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import agentgame.grid.Grid;
+import agentgame.path.point.GridPoint;
+import agentgame.path.search.heuristic.ManhattanHeuristic;
+
+/**
+ * Provides hierarchical path finding (HPA*) over the grid's
+ * {@link ClusterGraph}.
+ *
+ * The start and the goals are linked to the nodes of their clusters with a
+ * scan that avoids agents, the abstract graph is searched and the abstract
+ * path is refined cluster by cluster. Intra-cluster distances only consider
+ * the static map, so paths are near-optimal. When agents block the
+ * refinement, or the abstraction finds nothing, a plain A* search is run
+ * instead.
+ */
+public class HierarchicalSearch extends AstarSearch {
+
+	/** The scan for the start, the goals and the refinement. */
+	private final ClusterScan scan;
+
+	/** The distance and goal reached from every node of a goal cluster. */
+	private final Map<Integer, int[]> goalLinks;
+
+	/** The clusters holding goals. */
+	private final BitSet goalClusters;
+
+	/** The cells on the refined path. */
+	private final BitSet onPath;
+
+	/** The abstract path, then the refined path. */
+	private int[] path;
+
+	/** Scratch for the sources of a scan. */
+	private int[] sources;
+
+	/** Scratch for the partners of a node. */
+	private final int[] partners;
+
+	/**
+	 * Instantiates a new hierarchical search.
+	 *
+	 * @param grid
+	 *            the grid to search
+	 */
+	public HierarchicalSearch(final Grid grid) {
+		super(grid);
+		scan = new ClusterScan(grid, ClusterGraph.CLUSTER_SIZE);
+		goalLinks = new HashMap<Integer, int[]>();
+		goalClusters = new BitSet();
+		onPath = new BitSet();
+		path = new int[16];
+		sources = new int[16];
+		partners = new int[4];
+	}
+
+	@Override
+	protected int calculatePath(final int start) {
+		final ClusterGraph graph = grid.getClusterGraph();
+		if (graph != null) {
+			final int goal = calculateAbstractPath(graph, start);
+			if (goal >= 0 && refine(graph, start, goal)) {
+				return goal;
+			}
+			open.clear();
+			closed.clear();
+		}
+		return super.calculatePath(start);
+	}
+
+	/**
+	 * The abstraction already keeps the effort low, so the budget is not
+	 * applied and the search is never suspended. The nodes expanded are still
+	 * reported as spent.
+	 */
+	@Override
+	public List<GridPoint> searchPath(final GridPoint startingPoint, final Set<GridPoint> target,
+			final int budget) {
+		return searchPath(startingPoint, target);
+	}
+
+	@Override
+	public boolean isSuspended() {
+		return false;
+	}
+
+	@Override
+	public int getSpentBudget() {
+		return getExpandedNodes();
+	}
+
+	/**
+	 * Searches the abstract graph from the start to the closest goal.
+	 *
+	 * @param graph
+	 *            the cluster graph
+	 * @param start
+	 *            the start index
+	 * @return the goal reached, or -1 if none can be reached
+	 */
+	private int calculateAbstractPath(final ClusterGraph graph, final int start) {
+		goalLinks.clear();
+		goalClusters.clear();
+		for (int goal = goals.nextSetBit(0); goal >= 0; goal = goals.nextSetBit(goal + 1)) {
+			goalClusters.set(graph.getClusterOf(goal));
+		}
+
+		gScore[start] = 0;
+		fScore[start] = estimate(start / columns, start % columns);
+		open.insert(start, fScore[start]);
+
+		while (!open.isEmpty()) {
+
+			final int current = open.poll();
+			closed.set(current);
+
+			if (goals.get(current)) {
+				return current;
+			}
+			expandedNodes += 1;
+
+			if (current == start) {
+				expandStart(graph, start);
+			} else {
+				expandNode(graph, current);
+			}
+		}
+
+		/* Failure scenario. */
+		return -1;
+	}
+
+	/**
+	 * Links the start to the nodes and goals of its cluster.
+	 *
+	 * @param graph
+	 *            the cluster graph
+	 * @param start
+	 *            the start index
+	 */
+	private void expandStart(final ClusterGraph graph, final int start) {
+		final int cluster = graph.getClusterOf(start);
+		sources[0] = start;
+		scan.scan(graph, cluster, sources, 1, true);
+		final int[] clusterNodes = graph.getNodes(cluster);
+		for (int i = 0; i < clusterNodes.length; i++) {
+			final int distance = scan.getDistance(clusterNodes[i]);
+			if (clusterNodes[i] != start && distance != ClusterScan.UNREACHED) {
+				relax(clusterNodes[i], start, distance);
+			}
+		}
+		if (goalClusters.get(cluster)) {
+			for (int goal = goals.nextSetBit(0); goal >= 0; goal = goals.nextSetBit(goal + 1)) {
+				if (graph.getClusterOf(goal) != cluster) {
+					continue;
+				}
+				final int distance = scan.getDistance(goal);
+				if (distance != ClusterScan.UNREACHED) {
+					relax(goal, start, distance);
+				}
+			}
+		}
+		if (graph.getNodePosition(cluster, start) >= 0) {
+			relaxPartners(graph, start);
+		}
+	}
+
+	/**
+	 * Relaxes the edges of a node: the other nodes of its cluster, its
+	 * partners across the cluster borders and the goals of its cluster.
+	 *
+	 * @param graph
+	 *            the cluster graph
+	 * @param node
+	 *            the node index
+	 */
+	private void expandNode(final ClusterGraph graph, final int node) {
+		final int cluster = graph.getClusterOf(node);
+		final int position = graph.getNodePosition(cluster, node);
+		final int[] clusterNodes = graph.getNodes(cluster);
+		for (int i = 0; i < clusterNodes.length; i++) {
+			final int cost = graph.getCost(cluster, position, i);
+			if (i != position && cost != ClusterGraph.NO_PATH) {
+				relax(clusterNodes[i], node, gScore[node] + cost);
+			}
+		}
+		relaxPartners(graph, node);
+		if (goalClusters.get(cluster)) {
+			final int[] links = getGoalLinks(graph, cluster);
+			final int distance = links[2 * position];
+			if (distance != ClusterScan.UNREACHED) {
+				relax(links[2 * position + 1], node, gScore[node] + distance);
+			}
+		}
+	}
+
+	private void relaxPartners(final ClusterGraph graph, final int node) {
+		final int count = graph.collectPartners(node, partners);
+		for (int i = 0; i < count; i++) {
+			if (isWalkable(partners[i] / columns, partners[i] % columns)) {
+				relax(partners[i], node, gScore[node] + 1);
+			}
+		}
+	}
+
+	/**
+	 * Gets the distance from every node of a goal cluster to the closest goal
+	 * in it, scanning the cluster the first time it is needed.
+	 *
+	 * @param graph
+	 *            the cluster graph
+	 * @param cluster
+	 *            the cluster
+	 * @return the distance and the goal reached for every node position
+	 */
+	private int[] getGoalLinks(final ClusterGraph graph, final int cluster) {
+		int[] links = goalLinks.get(cluster);
+		if (links != null) {
+			return links;
+		}
+		int count = 0;
+		for (int goal = goals.nextSetBit(0); goal >= 0; goal = goals.nextSetBit(goal + 1)) {
+			if (graph.getClusterOf(goal) == cluster) {
+				if (count == sources.length) {
+					sources = Arrays.copyOf(sources, 2 * count);
+				}
+				sources[count++] = goal;
+			}
+		}
+		scan.scan(graph, cluster, sources, count, true);
+		final int[] clusterNodes = graph.getNodes(cluster);
+		links = new int[2 * clusterNodes.length];
+		for (int i = 0; i < clusterNodes.length; i++) {
+			links[2 * i] = scan.getDistance(clusterNodes[i]);
+			if (links[2 * i] != ClusterScan.UNREACHED) {
+				links[2 * i + 1] = scan.getOrigin(clusterNodes[i]);
+			}
+		}
+		goalLinks.put(cluster, links);
+		return links;
+	}
+
+	/**
+	 * Turns the abstract path into single steps with a scan inside each
+	 * cluster and links the steps through cameFrom.
+	 *
+	 * @param graph
+	 *            the cluster graph
+	 * @param start
+	 *            the start index
+	 * @param goal
+	 *            the goal index
+	 * @return false, if agents block the way
+	 */
+	private boolean refine(final ClusterGraph graph, final int start, final int goal) {
+		int abstractLength = 0;
+		for (int node = goal; node != start; node = cameFrom[node]) {
+			abstractLength = append(abstractLength, node);
+		}
+		abstractLength = append(abstractLength, start);
+		final int[] abstractPath = Arrays.copyOf(path, abstractLength);
+
+		onPath.clear();
+		int length = append(0, start);
+		onPath.set(start);
+		for (int i = abstractLength - 1; i > 0; i--) {
+			final int from = abstractPath[i];
+			final int to = abstractPath[i - 1];
+			final int segmentStart = length;
+			if (ManhattanHeuristic.getDistance(from / columns, from % columns, to / columns,
+					to % columns) == 1) {
+				if (!isWalkable(to / columns, to % columns)) {
+					return false;
+				}
+				length = append(length, to);
+			} else {
+				sources[0] = from;
+				scan.scan(graph, graph.getClusterOf(from), sources, 1, true);
+				if (scan.getDistance(to) == ClusterScan.UNREACHED) {
+					return false;
+				}
+				for (int cell = to; cell != from; cell = scan.getParent(cell)) {
+					length = append(length, cell);
+				}
+				reverse(segmentStart, length);
+			}
+			length = removeLoops(segmentStart, length);
+		}
+
+		for (int i = 1; i < length; i++) {
+			cameFrom[path[i]] = path[i - 1];
+		}
+		return true;
+	}
+
+	/**
+	 * Drops the detours of a freshly added segment that come back to a cell
+	 * already on the path.
+	 *
+	 * @param segmentStart
+	 *            where the segment starts in the path
+	 * @param length
+	 *            the path length
+	 * @return the new path length
+	 */
+	private int removeLoops(final int segmentStart, final int length) {
+		int kept = segmentStart;
+		for (int i = segmentStart; i < length; i++) {
+			final int cell = path[i];
+			if (onPath.get(cell)) {
+				while (path[kept - 1] != cell) {
+					kept -= 1;
+					onPath.clear(path[kept]);
+				}
+				continue;
+			}
+			onPath.set(cell);
+			path[kept++] = cell;
+		}
+		return kept;
+	}
+
+	private int append(final int length, final int cell) {
+		if (length == path.length) {
+			path = Arrays.copyOf(path, 2 * length);
+		}
+		path[length] = cell;
+		return length + 1;
+	}
+
+	private void reverse(final int from, final int to) {
+		for (int i = from, j = to - 1; i < j; i++, j--) {
+			final int swap = path[i];
+			path[i] = path[j];
+			path[j] = swap;
+		}
+	}
+
+}
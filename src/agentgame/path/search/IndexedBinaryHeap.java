@@ -0,0 +1,230 @@
+package agentgame.path.search;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of dense int node indices ordered by a long priority. The
+ * heap position of every node is tracked so a node's priority can be changed
+ * in place, or the node removed, instead of inserting a duplicate entry.
+ */
+public class IndexedBinaryHeap {
+
+	/** Marks a node that is not in the heap. */
+	private static final int ABSENT = -1;
+
+	/** The heap array holding node indices. */
+	private int[] heap;
+
+	/** The priority of every node, indexed by node. */
+	private long[] priorities;
+
+	/** The position of every node in the heap array, indexed by node. */
+	private int[] positions;
+
+	/** The number of nodes in the heap. */
+	private int size;
+
+	/**
+	 * Instantiates a new indexed binary heap.
+	 *
+	 * @param capacity
+	 *            the number of distinct node indices
+	 */
+	public IndexedBinaryHeap(final int capacity) {
+		heap = new int[capacity];
+		priorities = new long[capacity];
+		positions = new int[capacity];
+		Arrays.fill(positions, ABSENT);
+		size = 0;
+	}
+
+	/**
+	 * Grows the heap so it can hold node indices up to the given capacity.
+	 *
+	 * @param capacity
+	 *            the number of distinct node indices
+	 */
+	public void ensureCapacity(final int capacity) {
+		if (capacity <= positions.length) {
+			return;
+		}
+		final int previous = positions.length;
+		heap = Arrays.copyOf(heap, capacity);
+		priorities = Arrays.copyOf(priorities, capacity);
+		positions = Arrays.copyOf(positions, capacity);
+		Arrays.fill(positions, previous, capacity, ABSENT);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(final int node) {
+		return positions[node] != ABSENT;
+	}
+
+	public long getPriority(final int node) {
+		return priorities[node];
+	}
+
+	/**
+	 * Inserts a node that is not already in the heap.
+	 *
+	 * @param node
+	 *            the node
+	 * @param priority
+	 *            the priority
+	 */
+	public void insert(final int node, final long priority) {
+		heap[size] = node;
+		positions[node] = size;
+		priorities[node] = priority;
+		size += 1;
+		siftUp(size - 1);
+	}
+
+	/**
+	 * Lowers the priority of a node already in the heap.
+	 *
+	 * @param node
+	 *            the node
+	 * @param priority
+	 *            the new priority, not greater than the current one
+	 */
+	public void decreaseKey(final int node, final long priority) {
+		priorities[node] = priority;
+		siftUp(positions[node]);
+	}
+
+	/**
+	 * Changes the priority of a node already in the heap in either direction.
+	 *
+	 * @param node
+	 *            the node
+	 * @param priority
+	 *            the new priority
+	 */
+	public void update(final int node, final long priority) {
+		final long previous = priorities[node];
+		priorities[node] = priority;
+		if (priority < previous) {
+			siftUp(positions[node]);
+		} else {
+			siftDown(positions[node]);
+		}
+	}
+
+	/**
+	 * Removes a node from the heap.
+	 *
+	 * @param node
+	 *            the node, in the heap
+	 */
+	public void remove(final int node) {
+		final int position = positions[node];
+		size -= 1;
+		positions[node] = ABSENT;
+		if (position == size) {
+			return;
+		}
+		final int last = heap[size];
+		heap[position] = last;
+		positions[last] = position;
+		siftDown(position);
+		if (positions[last] == position) {
+			siftUp(position);
+		}
+	}
+
+	/**
+	 * Gives the lowest priority in the heap.
+	 *
+	 * @return the priority
+	 */
+	public long peekPriority() {
+		return priorities[heap[0]];
+	}
+
+	/**
+	 * Gives the node with the lowest priority without removing it.
+	 *
+	 * @return the node
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Removes and gives the node with the lowest priority.
+	 *
+	 * @return the node
+	 */
+	public int poll() {
+		final int min = heap[0];
+		size -= 1;
+		positions[min] = ABSENT;
+		if (size > 0) {
+			heap[0] = heap[size];
+			positions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return min;
+	}
+
+	/**
+	 * Empties the heap. Only the positions of the nodes still in the heap are
+	 * touched.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			positions[heap[i]] = ABSENT;
+		}
+		size = 0;
+	}
+
+	private void siftUp(final int from) {
+		int child = from;
+		final int node = heap[child];
+		final long priority = priorities[node];
+		while (child > 0) {
+			final int parent = (child - 1) >>> 1;
+			final int parentNode = heap[parent];
+			if (priorities[parentNode] <= priority) {
+				break;
+			}
+			heap[child] = parentNode;
+			positions[parentNode] = child;
+			child = parent;
+		}
+		heap[child] = node;
+		positions[node] = child;
+	}
+
+	private void siftDown(final int from) {
+		int parent = from;
+		final int node = heap[parent];
+		final long priority = priorities[node];
+		final int half = size >>> 1;
+		while (parent < half) {
+			int child = 2 * parent + 1;
+			final int right = child + 1;
+			if (right < size && priorities[heap[right]] < priorities[heap[child]]) {
+				child = right;
+			}
+			final int childNode = heap[child];
+			if (priority <= priorities[childNode]) {
+				break;
+			}
+			heap[parent] = childNode;
+			positions[childNode] = parent;
+			parent = child;
+		}
+		heap[parent] = node;
+		positions[node] = parent;
+	}
+
+}
@@ -0,0 +1,162 @@
+package agentgame.path.search;
+
+import agentgame.grid.Grid;
+
+/**
+ * Provides Jump Point Search over the uniform-cost 4-connected grid.
+ *
+ * Straight runs of cells are skipped over until a cell with a forced
+ * neighbour, a goal, or a cell from which a goal or forced neighbour can be
+ * seen sideways is met, so only those jump points enter the frontier. Paths
+ * are taken vertically first and turn horizontally at jump points, which
+ * keeps every shortest path reachable and the search optimal.
+ */
+public class JumpPointSearch extends GridSearch {
+
+	/** Marks a jump that ran into a wall or the grid border. */
+	private static final int NO_JUMP_POINT = -1;
+
+	/**
+	 * Instantiates a new jump point search.
+	 *
+	 * @param grid
+	 *            the grid to search
+	 */
+	public JumpPointSearch(final Grid grid) {
+		super(grid);
+	}
+
+	@Override
+	protected int calculatePath(final int start) {
+		gScore[start] = 0;
+		fScore[start] = estimate(start / columns, start % columns);
+		open.insert(start, fScore[start]);
+
+		while (!open.isEmpty()) {
+
+			final int current = open.poll();
+			closed.set(current);
+
+			if (goals.get(current)) {
+				return current;
+			}
+			expandedNodes += 1;
+
+			final int row = current / columns;
+			final int column = current % columns;
+			if (current == start) {
+				jumpFrom(current, row, column, 0, -1);
+				jumpFrom(current, row, column, 0, 1);
+				jumpFrom(current, row, column, -1, 0);
+				jumpFrom(current, row, column, 1, 0);
+				continue;
+			}
+			final int parent = cameFrom[current];
+			final int parentRow = parent / columns;
+			final int parentColumn = parent % columns;
+			final int rowDirection = Integer.signum(row - parentRow);
+			final int columnDirection = Integer.signum(column - parentColumn);
+			if (columnDirection != 0) {
+				jumpFrom(current, row, column, 0, columnDirection);
+				jumpFrom(current, row, column, -1, 0);
+				jumpFrom(current, row, column, 1, 0);
+			} else {
+				jumpFrom(current, row, column, rowDirection, 0);
+				jumpFrom(current, row, column, 0, -1);
+				jumpFrom(current, row, column, 0, 1);
+			}
+		}
+
+		/* Failure scenario. */
+		return -1;
+	}
+
+	/**
+	 * Jumps from a node in one direction and opens the jump point found.
+	 *
+	 * @param current
+	 *            the node index
+	 * @param row
+	 *            the node row
+	 * @param column
+	 *            the node column
+	 * @param rowDirection
+	 *            the row direction
+	 * @param columnDirection
+	 *            the column direction
+	 */
+	private void jumpFrom(final int current, final int row, final int column, final int rowDirection,
+			final int columnDirection) {
+		final int jumpPoint;
+		if (columnDirection != 0) {
+			jumpPoint = jumpHorizontally(row, column + columnDirection, columnDirection);
+		} else {
+			jumpPoint = jumpVertically(row + rowDirection, column, rowDirection);
+		}
+		if (jumpPoint == NO_JUMP_POINT) {
+			return;
+		}
+		final int distance = Math.abs(jumpPoint / columns - row) + Math.abs(jumpPoint % columns - column);
+		relax(jumpPoint, current, gScore[current] + distance);
+	}
+
+	/**
+	 * Walks along a row until a jump point is found.
+	 *
+	 * @param row
+	 *            the row
+	 * @param from
+	 *            the first column to check
+	 * @param direction
+	 *            the column direction
+	 * @return the jump point index, or NO_JUMP_POINT
+	 */
+	private int jumpHorizontally(final int row, final int from, final int direction) {
+		for (int column = from; isWalkable(row, column); column += direction) {
+			final int index = row * columns + column;
+			if (goals.get(index)) {
+				return index;
+			}
+			if (isWalkable(row - 1, column) && !isWalkable(row - 1, column - direction)) {
+				return index;
+			}
+			if (isWalkable(row + 1, column) && !isWalkable(row + 1, column - direction)) {
+				return index;
+			}
+		}
+		return NO_JUMP_POINT;
+	}
+
+	/**
+	 * Walks along a column until a jump point is found. Every cell is also
+	 * looked at sideways, since paths only turn horizontally at jump points.
+	 *
+	 * @param from
+	 *            the first row to check
+	 * @param column
+	 *            the column
+	 * @param direction
+	 *            the row direction
+	 * @return the jump point index, or NO_JUMP_POINT
+	 */
+	private int jumpVertically(final int from, final int column, final int direction) {
+		for (int row = from; isWalkable(row, column); row += direction) {
+			final int index = row * columns + column;
+			if (goals.get(index)) {
+				return index;
+			}
+			if (isWalkable(row, column - 1) && !isWalkable(row - direction, column - 1)) {
+				return index;
+			}
+			if (isWalkable(row, column + 1) && !isWalkable(row - direction, column + 1)) {
+				return index;
+			}
+			if (jumpHorizontally(row, column - 1, -1) != NO_JUMP_POINT
+					|| jumpHorizontally(row, column + 1, 1) != NO_JUMP_POINT) {
+				return index;
+			}
+		}
+		return NO_JUMP_POINT;
+	}
+
+}
@@ -0,0 +1,38 @@
+package agentgame.path.search;
+
+import java.util.List;
+import java.util.Set;
+
+import agentgame.grid.MoveEnum;
+import agentgame.path.point.GridPoint;
+
+/**
+ * Finds shortest paths on the grid from a point to the closest of a set of
+ * target points.
+ */
+public interface PathFinder {
+
+	/**
+	 * Gives the first move of a shortest path.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 * @return the move, or null if no target point can be reached
+	 */
+	public MoveEnum search(GridPoint startingPoint, Set<GridPoint> target);
+
+	/**
+	 * Gives a whole shortest path.
+	 *
+	 * @param startingPoint
+	 *            the starting point
+	 * @param target
+	 *            the target
+	 * @return the points from the first step up to the reached target point,
+	 *         or null if no target point can be reached
+	 */
+	public List<GridPoint> searchPath(GridPoint startingPoint, Set<GridPoint> target);
+
+}
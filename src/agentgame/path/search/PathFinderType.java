@@ -0,0 +1,70 @@
+package agentgame.path.search;
+
+import agentgame.grid.Grid;
+
+/**
+ * The available path finders, selectable per run.
+ */
+public enum PathFinderType {
+
+	/** A* over every cell. */
+	ASTAR("astar"),
+	/** Jump Point Search over the 4-connected grid. */
+	JPS("jps"),
+	/** Hierarchical path finding over clusters of the grid. */
+	HPA("hpa"),
+	/** D* Lite, repaired from the occupancy changes between calls. */
+	DSTAR_LITE("dstar"),
+	/** Windowed cooperative A* against the other agents' reservations. */
+	COOPERATIVE("whca");
+
+	/** The name used on the command line. */
+	private final String optionName;
+
+	private PathFinderType(final String optionName) {
+		this.optionName = optionName;
+	}
+
+	/**
+	 * Creates a new path finder of this type.
+	 *
+	 * @param grid
+	 *            the grid to search
+	 * @return the path finder
+	 */
+	public PathFinder create(final Grid grid) {
+		switch (this) {
+		case JPS:
+			return new JumpPointSearch(grid);
+		case HPA:
+			return new HierarchicalSearch(grid);
+		case DSTAR_LITE:
+			return new DStarLiteSearch(grid);
+		case COOPERATIVE:
+			return new CooperativeSearch(grid);
+		default:
+			return new AstarSearch(grid);
+		}
+	}
+
+	public String getOptionName() {
+		return optionName;
+	}
+
+	/**
+	 * Gets the type by its command line name.
+	 *
+	 * @param optionName
+	 *            the option name
+	 * @return the path finder type
+	 */
+	public static PathFinderType fromOptionName(final String optionName) {
+		for (final PathFinderType type : values()) {
+			if (type.optionName.equalsIgnoreCase(optionName.trim())) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Unknown path finder: " + optionName);
+	}
+
+}
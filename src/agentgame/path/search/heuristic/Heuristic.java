@@ -0,0 +1,24 @@
+package agentgame.path.search.heuristic;
+
+/**
+ * Estimates the walking distance between two positions for the searches. An
+ * estimate must never be above the real distance.
+ */
+public interface Heuristic {
+
+	/**
+	 * Estimates the distance between 2 positions given by row and column.
+	 *
+	 * @param row1
+	 *            the row of the first position
+	 * @param column1
+	 *            the column of the first position
+	 * @param row2
+	 *            the row of the second position
+	 * @param column2
+	 *            the column of the second position
+	 * @return the estimated distance
+	 */
+	public int estimate(int row1, int column1, int row2, int column2);
+
+}
@@ -0,0 +1,62 @@
+package agentgame.path.search.heuristic;
+
+import agentgame.grid.Grid;
+
+/**
+ * The available heuristics, selectable per run.
+ */
+public enum HeuristicType {
+
+	/** The Manhattan distance. */
+	MANHATTAN("manhattan"),
+	/** Landmark distances with the triangle inequality. */
+	LANDMARKS("alt");
+
+	/** The name used on the command line. */
+	private final String optionName;
+
+	private HeuristicType(final String optionName) {
+		this.optionName = optionName;
+	}
+
+	/**
+	 * Creates the heuristic of this type for a grid whose rows and columns are
+	 * known.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @return the heuristic
+	 */
+	public Heuristic create(final Grid grid) {
+		switch (this) {
+		case LANDMARKS:
+			final LandmarkHeuristic landmarks = new LandmarkHeuristic(grid,
+					LandmarkHeuristic.DEFAULT_LANDMARK_COUNT);
+			grid.addStaticMapListener(landmarks);
+			return landmarks;
+		default:
+			return new ManhattanHeuristic();
+		}
+	}
+
+	public String getOptionName() {
+		return optionName;
+	}
+
+	/**
+	 * Gets the type by its command line name.
+	 *
+	 * @param optionName
+	 *            the option name
+	 * @return the heuristic type
+	 */
+	public static HeuristicType fromOptionName(final String optionName) {
+		for (final HeuristicType type : values()) {
+			if (type.optionName.equalsIgnoreCase(optionName.trim())) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Unknown heuristic: " + optionName);
+	}
+
+}
@@ -0,0 +1,166 @@
+package agentgame.path.search.heuristic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import agentgame.grid.Grid;
+import agentgame.grid.StaticMapListener;
+import agentgame.grid.cell.Cell;
+import agentgame.path.field.DistanceField;
+
+/**
+ * Gives the ALT (A*, landmarks, triangle inequality) estimate. The exact
+ * walking distance from a few landmark cells to every cell is kept, and since
+ * d(a, b) >= |d(L, a) - d(L, b)| for every landmark L, the largest such
+ * difference is a lower bound that sees around walls. It is never below the
+ * Manhattan distance, which is taken when larger.
+ *
+ * Landmarks are spread over the map by picking, each time, the reachable cell
+ * farthest from the ones already picked. Agents only make real distances
+ * longer, so the estimate stays admissible, but the static map must not
+ * change under it: every change picks and measures the landmarks again.
+ */
+public class LandmarkHeuristic implements Heuristic, StaticMapListener {
+
+	/** The number of landmarks picked by default. */
+	public static final int DEFAULT_LANDMARK_COUNT = 4;
+
+	/** The grid. */
+	private final Grid grid;
+
+	/** The number of landmarks to pick. */
+	private final int landmarkCount;
+
+	/** The distances from every landmark. */
+	private DistanceField[] landmarks;
+
+	/**
+	 * Instantiates a new landmark heuristic and measures its landmarks. The
+	 * grid rows and columns must already be known.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @param landmarkCount
+	 *            the number of landmarks to pick
+	 */
+	public LandmarkHeuristic(final Grid grid, final int landmarkCount) {
+		if (landmarkCount < 1) {
+			throw new IllegalArgumentException("At least one landmark is needed: " + landmarkCount);
+		}
+		this.grid = grid;
+		this.landmarkCount = landmarkCount;
+		pickLandmarks();
+	}
+
+	/**
+	 * Picks the landmarks farthest apart. The first one is the cell farthest
+	 * from the first reachable cell of the map.
+	 */
+	private void pickLandmarks() {
+		final int columns = grid.getColumns();
+		final int size = grid.getRows() * columns;
+		final List<DistanceField> picked = new ArrayList<DistanceField>();
+		int seed = 0;
+		while (seed < size && !isReachable(seed)) {
+			seed += 1;
+		}
+		if (seed == size) {
+			landmarks = new DistanceField[0];
+			return;
+		}
+		final int[] nearest = new int[size];
+		Arrays.fill(nearest, Integer.MAX_VALUE);
+		updateNearest(nearest, measureFrom(seed), columns);
+		int landmark = findFarthest(nearest);
+		Arrays.fill(nearest, Integer.MAX_VALUE);
+		while (landmark >= 0 && picked.size() < landmarkCount) {
+			final DistanceField field = measureFrom(landmark);
+			picked.add(field);
+			updateNearest(nearest, field, columns);
+			landmark = findFarthest(nearest);
+		}
+		landmarks = picked.toArray(new DistanceField[picked.size()]);
+	}
+
+	private DistanceField measureFrom(final int cell) {
+		final BitSet source = new BitSet();
+		source.set(cell);
+		return new DistanceField(grid, source);
+	}
+
+	/**
+	 * Lowers the distance to the closest landmark of every cell reached by a
+	 * field.
+	 *
+	 * @param nearest
+	 *            the distance to the closest landmark of every cell
+	 * @param field
+	 *            the field
+	 * @param columns
+	 *            the grid columns
+	 */
+	private void updateNearest(final int[] nearest, final DistanceField field, final int columns) {
+		for (int cell = 0; cell < nearest.length; cell++) {
+			final int distance = field.getDistance(cell / columns, cell % columns);
+			if (distance != DistanceField.UNREACHED && distance < nearest[cell]) {
+				nearest[cell] = distance;
+			}
+		}
+	}
+
+	/**
+	 * Finds the reachable cell farthest from every landmark. Cells no landmark
+	 * reaches come first, so every part of the map gets one.
+	 *
+	 * @param nearest
+	 *            the distance to the closest landmark of every cell
+	 * @return the cell index, or -1 if every reachable cell is a landmark
+	 */
+	private int findFarthest(final int[] nearest) {
+		int farthest = -1;
+		int best = 0;
+		for (int cell = 0; cell < nearest.length; cell++) {
+			if (nearest[cell] > best && isReachable(cell)) {
+				best = nearest[cell];
+				farthest = cell;
+			}
+		}
+		return farthest;
+	}
+
+	private boolean isReachable(final int cell) {
+		return !grid.getStore().isWall(cell);
+	}
+
+	@Override
+	public int estimate(final int row1, final int column1, final int row2, final int column2) {
+		int best = ManhattanHeuristic.getDistance(row1, column1, row2, column2);
+		for (int i = 0; i < landmarks.length; i++) {
+			final int from = landmarks[i].getDistance(row1, column1);
+			final int to = landmarks[i].getDistance(row2, column2);
+			if (from == DistanceField.UNREACHED || to == DistanceField.UNREACHED) {
+				continue;
+			}
+			final int bound = Math.abs(from - to);
+			if (bound > best) {
+				best = bound;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Picks and measures the landmarks again.
+	 */
+	@Override
+	public void staticCellChanged(final Cell cell) {
+		pickLandmarks();
+	}
+
+	public int getLandmarkCount() {
+		return landmarks.length;
+	}
+
+}
@@ -5,7 +5,7 @@ import agentgame.path.point.CartesianPoint;
 /**
  * Gives Manhattan Distance functionality.
  */
-public class ManhattanHeuristic {
+public class ManhattanHeuristic implements Heuristic {
 
 	/**
 	 * Gets the distance between 2 points.
@@ -22,4 +22,26 @@ public class ManhattanHeuristic {
 		return distanceX + distanceY;
 	}
 
+	/**
+	 * Gets the distance between 2 positions given by row and column.
+	 *
+	 * @param row1
+	 *            the row of the first position
+	 * @param column1
+	 *            the column of the first position
+	 * @param row2
+	 *            the row of the second position
+	 * @param column2
+	 *            the column of the second position
+	 * @return the distance
+	 */
+	public static int getDistance(final int row1, final int column1, final int row2, final int column2) {
+		return Math.abs(row1 - row2) + Math.abs(column1 - column2);
+	}
+
+	@Override
+	public int estimate(final int row1, final int column1, final int row2, final int column2) {
+		return getDistance(row1, column1, row2, column2);
+	}
+
 }
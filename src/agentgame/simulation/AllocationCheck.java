@@ -0,0 +1,103 @@
+package agentgame.simulation;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import agentgame.grid.Grid;
+import agentgame.grid.MoveEnum;
+import agentgame.path.point.GridPoint;
+
+/**
+ * Checks that the neighbour queries allocate nothing. It loads a game the
+ * way the headless game does, walks the neighbour masks of every cell until
+ * the code is warm, then walks them again and fails if the thread allocated
+ * any bytes meanwhile. The parameters are those of the headless game plus
+ * --passes=, the number of times every cell is walked.
+ */
+public final class AllocationCheck {
+
+	/** The name of the passes parameter. */
+	public static final String PASSES = "passes";
+
+	/** The passes when none is given. */
+	private static final int DEFAULT_PASSES = 200;
+
+	private AllocationCheck() {
+	}
+
+	/**
+	 * Walks the neighbours of every cell, empty and all, the way the agents
+	 * and searches do.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @param passes
+	 *            the times every cell is walked
+	 * @return a sum of the neighbours found, so the walk is not left out
+	 */
+	private static long walk(final Grid grid, final int passes) {
+		long found = 0;
+		for (int pass = 0; pass < passes; pass++) {
+			for (int row = 0; row < grid.getRows(); row++) {
+				for (int column = 0; column < grid.getColumns(); column++) {
+					final GridPoint point = grid.getCell(row, column);
+					int neighbors = point.getAllNeighborMask();
+					while (neighbors != 0) {
+						final MoveEnum move = MoveEnum.lowestOf(neighbors);
+						neighbors &= neighbors - 1;
+						found += point.getGridPointByMove(move).getX();
+					}
+					found += Integer.bitCount(point.getEmptyNeighborMask());
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Gets the bytes the current thread allocated so far.
+	 *
+	 * @param threads
+	 *            the thread bean
+	 * @return the bytes
+	 */
+	private static long allocatedBytes(final com.sun.management.ThreadMXBean threads) {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	public static void main(final String[] args) throws IOException {
+		final Map<String, String> parameters = HeadlessGame.parseNamedParameters(args);
+		final int passes = parameters.containsKey(PASSES) ? Integer.parseInt(parameters.get(PASSES).trim())
+				: DEFAULT_PASSES;
+		if (passes < 1) {
+			throw new IllegalArgumentException("At least one pass is needed: " + passes);
+		}
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			throw new UnsupportedOperationException("This JVM does not count the bytes a thread allocates.");
+		}
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemoryEnabled()) {
+			threads.setThreadAllocatedMemoryEnabled(true);
+		}
+		final SimulationEngine engine = HeadlessGame.load(parameters);
+		final Grid grid = engine.getGrid();
+		engine.close();
+		/* Warm up, which also makes every cell. */
+		long found = walk(grid, passes);
+		/* What reading the counter costs by itself. */
+		final long before = allocatedBytes(threads);
+		final long overhead = allocatedBytes(threads) - before;
+		final long start = allocatedBytes(threads);
+		found += walk(grid, passes);
+		final long allocated = allocatedBytes(threads) - start - overhead;
+		System.out.println("Neighbour queries: " + (long) passes * grid.getRows() * grid.getColumns()
+				+ ", allocated: " + allocated + " bytes, checksum: " + found);
+		if (allocated > 0) {
+			System.err.println("The neighbour queries allocate again.");
+			System.exit(1);
+		}
+	}
+
+}
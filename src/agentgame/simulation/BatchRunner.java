@@ -0,0 +1,334 @@
+package agentgame.simulation;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import agentgame.entity.agent.AgentStatistics;
+import agentgame.grid.GameOptions;
+
+/**
+ * Runs many headless games on all cores and writes what came out. Every map
+ * of --map= is run with every agent file of --agents= and every seed of
+ * --seeds=, the lists separated by commas. The game options and --ticks=
+ * apply to every run, --workers= sets how many runs go at once.
+ *
+ * With --csv= a row per run is written, with --json= the runs and a summary
+ * per map and agent file. The summaries are printed as well.
+ */
+public final class BatchRunner {
+
+	/** The name of the seed list parameter. */
+	public static final String SEEDS = "seeds";
+
+	/** The name of the parallel runs parameter. */
+	public static final String WORKERS = "workers";
+
+	/** The name of the CSV output parameter. */
+	public static final String CSV = "csv";
+
+	/** The name of the JSON output parameter. */
+	public static final String JSON = "json";
+
+	/** The tick limit when none is given. */
+	private static final int DEFAULT_TICKS = 100000;
+
+	/** The header of the CSV output. */
+	private static final String CSV_HEADER = "map,agents,seed,ticks,finished,millis,randomMoves,astarMoves,fieldMoves,"
+			+ "blockedMoves,knowledgeTransfers,targetsFound,lostClaims";
+
+	private BatchRunner() {
+	}
+
+	/**
+	 * Runs every combination of map, agent file and seed.
+	 *
+	 * @param parameters
+	 *            the named parameters
+	 * @return the results, in the order of the combinations
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static List<RunResult> run(final Map<String, String> parameters) throws IOException {
+		if (!parameters.containsKey(HeadlessGame.MAP) || !parameters.containsKey(HeadlessGame.AGENTS)) {
+			throw new IllegalArgumentException(
+					"Both --" + HeadlessGame.MAP + "= and --" + HeadlessGame.AGENTS + "= are needed.");
+		}
+		final int maxTicks = parameters.containsKey(HeadlessGame.TICKS)
+				? Integer.parseInt(parameters.get(HeadlessGame.TICKS).trim()) : DEFAULT_TICKS;
+		final int workers = parameters.containsKey(WORKERS) ? Integer.parseInt(parameters.get(WORKERS).trim())
+				: Runtime.getRuntime().availableProcessors();
+		if (workers < 1) {
+			throw new IllegalArgumentException("At least one worker is needed: " + workers);
+		}
+		final List<Callable<RunResult>> runs = new ArrayList<Callable<RunResult>>();
+		for (final String mapFile : split(parameters.get(HeadlessGame.MAP))) {
+			for (final String agentFile : split(parameters.get(HeadlessGame.AGENTS))) {
+				for (final String seed : split(parameters.containsKey(SEEDS) ? parameters.get(SEEDS) : "1")) {
+					final GameOptions options = GameOptions.fromNamedParameters(parameters);
+					options.setSeed(Long.valueOf(seed));
+					runs.add(new Callable<RunResult>() {
+
+						@Override
+						public RunResult call() throws IOException {
+							final SimulationEngine engine = HeadlessGame.load(mapFile, agentFile, options);
+							try {
+								final long start = System.currentTimeMillis();
+								final int ticks = engine.run(maxTicks);
+								return new RunResult(mapFile, agentFile, engine, ticks,
+										System.currentTimeMillis() - start);
+							} finally {
+								engine.close();
+							}
+						}
+					});
+				}
+			}
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			final List<RunResult> results = new ArrayList<RunResult>();
+			for (final Future<RunResult> future : executor.invokeAll(runs)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("The batch was interrupted.", e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException("A run failed.", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static List<String> split(final String list) {
+		final List<String> items = new ArrayList<String>();
+		for (final String item : list.split(",")) {
+			if (item.trim().length() > 0) {
+				items.add(item.trim());
+			}
+		}
+		if (items.isEmpty()) {
+			throw new IllegalArgumentException("Empty list: " + list);
+		}
+		return items;
+	}
+
+	/**
+	 * Groups the results by map and agent file, in the order they came.
+	 *
+	 * @param results
+	 *            the results
+	 * @return the summaries
+	 */
+	public static List<Summary> summarize(final List<RunResult> results) {
+		final Map<String, Summary> summaries = new LinkedHashMap<String, Summary>();
+		for (final RunResult result : results) {
+			final String key = result.getMapFile() + "\n" + result.getAgentFile();
+			Summary summary = summaries.get(key);
+			if (summary == null) {
+				summary = new Summary(result.getMapFile(), result.getAgentFile());
+				summaries.put(key, summary);
+			}
+			summary.add(result);
+		}
+		return new ArrayList<Summary>(summaries.values());
+	}
+
+	/**
+	 * Writes a row per run.
+	 *
+	 * @param file
+	 *            the CSV file
+	 * @param results
+	 *            the results
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static void writeCsv(final String file, final List<RunResult> results) throws IOException {
+		final PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8));
+		try {
+			writer.println(CSV_HEADER);
+			for (final RunResult result : results) {
+				final AgentStatistics totals = result.getTotals();
+				writer.println(csvField(result.getMapFile()) + "," + csvField(result.getAgentFile()) + ","
+						+ result.getSeed() + "," + result.getTicks() + "," + result.isFinished() + ","
+						+ result.getMillis() + "," + totals.getRandomMoves() + "," + totals.getAstarMoves() + ","
+						+ totals.getFieldMoves() + "," + totals.getBlockedMoves() + ","
+						+ totals.getKnowledgeTransfers() + "," + totals.getTargetsFound() + ","
+						+ totals.getLostClaims());
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String csvField(final String value) {
+		if (value.indexOf('"') < 0 && value.indexOf(',') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Writes the runs and their summaries.
+	 *
+	 * @param file
+	 *            the JSON file
+	 * @param results
+	 *            the results
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static void writeJson(final String file, final List<RunResult> results) throws IOException {
+		final PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8));
+		try {
+			writer.println("{");
+			writer.println("  \"runs\": [");
+			for (int i = 0; i < results.size(); i++) {
+				final RunResult result = results.get(i);
+				final AgentStatistics totals = result.getTotals();
+				writer.print("    {\"map\": " + jsonString(result.getMapFile()) + ", \"agents\": "
+						+ jsonString(result.getAgentFile()) + ", \"seed\": " + result.getSeed() + ", \"ticks\": "
+						+ result.getTicks() + ", \"finished\": " + result.isFinished() + ", \"millis\": "
+						+ result.getMillis() + ", \"randomMoves\": " + totals.getRandomMoves()
+						+ ", \"astarMoves\": " + totals.getAstarMoves() + ", \"fieldMoves\": "
+						+ totals.getFieldMoves() + ", \"blockedMoves\": " + totals.getBlockedMoves()
+						+ ", \"knowledgeTransfers\": " + totals.getKnowledgeTransfers() + ", \"targetsFound\": "
+						+ totals.getTargetsFound() + ", \"lostClaims\": " + totals.getLostClaims() + "}");
+				writer.println(i < results.size() - 1 ? "," : "");
+			}
+			writer.println("  ],");
+			writer.println("  \"summaries\": [");
+			final List<Summary> summaries = summarize(results);
+			for (int i = 0; i < summaries.size(); i++) {
+				final Summary summary = summaries.get(i);
+				writer.print("    {\"map\": " + jsonString(summary.mapFile) + ", \"agents\": "
+						+ jsonString(summary.agentFile) + ", \"runs\": " + summary.runs + ", \"finished\": "
+						+ summary.finished + ", \"minTicks\": " + summary.minTicks + ", \"meanTicks\": "
+						+ summary.getMeanTicks() + ", \"maxTicks\": " + summary.maxTicks + ", \"meanRandomMoves\": "
+						+ summary.getMean(summary.randomMoves) + ", \"meanAstarMoves\": "
+						+ summary.getMean(summary.astarMoves) + ", \"meanBlockedMoves\": "
+						+ summary.getMean(summary.blockedMoves) + ", \"meanKnowledgeTransfers\": "
+						+ summary.getMean(summary.knowledgeTransfers) + "}");
+				writer.println(i < summaries.size() - 1 ? "," : "");
+			}
+			writer.println("  ]");
+			writer.println("}");
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String jsonString(final String value) {
+		final StringBuilder builder = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			final char ch = value.charAt(i);
+			if (ch == '"' || ch == '\\') {
+				builder.append('\\').append(ch);
+			} else if (ch < ' ') {
+				builder.append(String.format("\\u%04x", (int) ch));
+			} else {
+				builder.append(ch);
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+	public static void main(final String[] args) throws IOException {
+		final Map<String, String> parameters = HeadlessGame.parseNamedParameters(args);
+		final List<RunResult> results = run(parameters);
+		if (parameters.containsKey(CSV)) {
+			writeCsv(parameters.get(CSV), results);
+		}
+		if (parameters.containsKey(JSON)) {
+			writeJson(parameters.get(JSON), results);
+		}
+		for (final Summary summary : summarize(results)) {
+			System.out.println(summary);
+		}
+	}
+
+	/**
+	 * The runs of one map and agent file put together.
+	 */
+	public static final class Summary {
+
+		private final String mapFile;
+
+		private final String agentFile;
+
+		private int runs;
+
+		private int finished;
+
+		private int minTicks;
+
+		private int maxTicks;
+
+		private long ticks;
+
+		private long randomMoves;
+
+		private long astarMoves;
+
+		private long blockedMoves;
+
+		private long knowledgeTransfers;
+
+		Summary(final String mapFile, final String agentFile) {
+			this.mapFile = mapFile;
+			this.agentFile = agentFile;
+			this.minTicks = Integer.MAX_VALUE;
+			this.maxTicks = 0;
+		}
+
+		void add(final RunResult result) {
+			final AgentStatistics totals = result.getTotals();
+			runs += 1;
+			if (result.isFinished()) {
+				finished += 1;
+			}
+			minTicks = Math.min(minTicks, result.getTicks());
+			maxTicks = Math.max(maxTicks, result.getTicks());
+			ticks += result.getTicks();
+			randomMoves += totals.getRandomMoves();
+			astarMoves += totals.getAstarMoves();
+			blockedMoves += totals.getBlockedMoves();
+			knowledgeTransfers += totals.getKnowledgeTransfers();
+		}
+
+		public double getMeanTicks() {
+			return getMean(ticks);
+		}
+
+		private double getMean(final long total) {
+			return (double) total / runs;
+		}
+
+		@Override
+		public String toString() {
+			return mapFile + " " + agentFile + ": runs=" + runs + ", finished=" + finished + ", ticks="
+					+ minTicks + "/" + getMeanTicks() + "/" + maxTicks + " (min/mean/max), randomMoves="
+					+ getMean(randomMoves) + ", astarMoves=" + getMean(astarMoves) + ", blockedMoves="
+					+ getMean(blockedMoves) + ", knowledgeTransfers=" + getMean(knowledgeTransfers);
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+package agentgame.simulation;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import agentgame.grid.GameOptions;
+import agentgame.grid.Grid;
+import agentgame.parser.FileParser;
+
+/**
+ * Runs a game without a display, as fast as it goes. The parameters are the
+ * game options plus --map=, --agents= and --ticks=, all given as --name=value.
+ * With the same --seed= a run is replayed exactly.
+ */
+public final class HeadlessGame {
+
+	/** The name of the map file parameter. */
+	public static final String MAP = "map";
+
+	/** The name of the agent file parameter. */
+	public static final String AGENTS = "agents";
+
+	/** The name of the tick limit parameter. */
+	public static final String TICKS = "ticks";
+
+	/** The tick limit when none is given. */
+	private static final int DEFAULT_TICKS = 100000;
+
+	private HeadlessGame() {
+	}
+
+	/**
+	 * Reads the named parameters, --name=value, the way JavaFX does.
+	 *
+	 * @param args
+	 *            the command line arguments
+	 * @return the named parameters
+	 */
+	public static Map<String, String> parseNamedParameters(final String[] args) {
+		final Map<String, String> parameters = new HashMap<String, String>();
+		for (final String arg : args) {
+			final int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0) {
+				throw new IllegalArgumentException("Expected --name=value: " + arg);
+			}
+			parameters.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+		return parameters;
+	}
+
+	/**
+	 * Loads a game and makes it ready to tick.
+	 *
+	 * @param parameters
+	 *            the named parameters
+	 * @return the engine of the game
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static SimulationEngine load(final Map<String, String> parameters) throws IOException {
+		if (!parameters.containsKey(MAP) || !parameters.containsKey(AGENTS)) {
+			throw new IllegalArgumentException("Both --" + MAP + "= and --" + AGENTS + "= are needed.");
+		}
+		return load(parameters.get(MAP), parameters.get(AGENTS), GameOptions.fromNamedParameters(parameters));
+	}
+
+	/**
+	 * Loads a game from its files and makes it ready to tick.
+	 *
+	 * @param mapFile
+	 *            the map file
+	 * @param agentFile
+	 *            the agent file
+	 * @param options
+	 *            the settings of the run
+	 * @return the engine of the game
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static SimulationEngine load(final String mapFile, final String agentFile, final GameOptions options)
+			throws IOException {
+		final List<String> mapLines = new FileParser(mapFile).parse();
+		final List<String> agentLines = new FileParser(agentFile).parse();
+		final Grid grid = new Grid(mapLines, agentLines, options);
+		grid.init();
+		return grid.getEngine();
+	}
+
+	public static void main(final String[] args) throws IOException {
+		final Map<String, String> parameters = parseNamedParameters(args);
+		final int maxTicks = parameters.containsKey(TICKS) ? Integer.parseInt(parameters.get(TICKS).trim())
+				: DEFAULT_TICKS;
+		final SimulationEngine engine = load(parameters);
+		final long start = System.currentTimeMillis();
+		final int ticks = engine.run(maxTicks);
+		final long elapsed = System.currentTimeMillis() - start;
+		engine.close();
+		System.out.println("Ticks: " + ticks + ", finished: " + engine.isFinished() + ", seed: "
+				+ engine.getGrid().getSeed() + ", time: " + elapsed + " ms");
+	}
+
+}
@@ -0,0 +1,182 @@
+package agentgame.simulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import agentgame.entity.agent.Agent;
+import agentgame.grid.Grid;
+import agentgame.grid.GridStore;
+import agentgame.grid.PositionTools;
+import agentgame.grid.cell.Cell;
+import agentgame.path.point.GridPoint;
+
+/**
+ * Checks that the agents perceive the same whichever way they look. It runs
+ * a game with the headless game's parameters and after every tick compares,
+ * for every agent on the map, what the discovery table gives with what the
+ * range queries on the spatial hashes give at radius 1. At a --perception=
+ * above 1 the range queries are also compared with a scan of every cell and
+ * every agent. Any difference fails the check.
+ *
+ * Every few ticks a free cell next to an important building is turned into a
+ * wall, and back again the next time, so the spatial hashes have to follow
+ * the static changes of the map.
+ */
+public final class PerceptionCheck {
+
+	/** The tick limit when none is given. */
+	private static final int DEFAULT_TICKS = 100000;
+
+	/** The ticks between two wall flips. */
+	private static final int FLIP_PERIOD = 10;
+
+	/** The cells found by the way being checked. */
+	private static final List<GridPoint> cells = new ArrayList<GridPoint>();
+
+	/** The agents found by the way being checked. */
+	private static final List<Agent> agents = new ArrayList<Agent>();
+
+	/** The cells found by the way compared with. */
+	private static final List<GridPoint> expectedCells = new ArrayList<GridPoint>();
+
+	/** The agents found by the way compared with. */
+	private static final List<Agent> expectedAgents = new ArrayList<Agent>();
+
+	/** The cell last turned into a wall, null if none is. */
+	private static Cell wall;
+
+	/** Where the search for the next cell to turn into a wall goes on. */
+	private static int nextWall;
+
+	private PerceptionCheck() {
+	}
+
+	/**
+	 * Turns the cell last turned into a wall back, or else the next free cell
+	 * next to an important building into a wall.
+	 *
+	 * @param grid
+	 *            the grid
+	 */
+	private static void flipWall(final Grid grid) {
+		if (wall != null) {
+			wall.setUnreachable(false);
+			wall = null;
+			return;
+		}
+		final GridStore store = grid.getStore();
+		for (int i = 0; i < store.getSize(); i++) {
+			final int id = (nextWall + i) % store.getSize();
+			if (!store.isOccupied(id) && grid.getDiscoveryTable().getIdentities(id) != 0) {
+				wall = grid.getCell(id);
+				wall.setUnreachable(true);
+				nextWall = id + 1;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Finds by scanning the whole map what an agent perceives within a
+	 * radius.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @param agent
+	 *            the agent
+	 * @param radius
+	 *            the perception radius
+	 */
+	private static void scan(final Grid grid, final Agent agent, final int radius) {
+		expectedCells.clear();
+		expectedAgents.clear();
+		final GridPoint cell = agent.getCurrentCell();
+		if (PositionTools.samePoint(cell, agent.getHome())) {
+			return;
+		}
+		final GridStore store = grid.getStore();
+		for (int id = 0; id < store.getSize(); id++) {
+			if (!store.isWall(id) && grid.getDiscoveryTable().getIdentities(id) != 0
+					&& stepsBetween(cell, store.rowOf(id), store.columnOf(id)) <= radius - 1) {
+				expectedCells.add(grid.getCell(id));
+			}
+		}
+		for (final Agent other : grid.getAgents()) {
+			final GridPoint otherCell = other.getCurrentCell();
+			if (other != agent && other.isVisible() && !PositionTools.samePoint(otherCell, other.getHome())
+					&& stepsBetween(cell, otherCell.getY(), otherCell.getX()) <= radius) {
+				expectedAgents.add(other);
+			}
+		}
+	}
+
+	private static int stepsBetween(final GridPoint cell, final int row, final int column) {
+		return Math.abs(cell.getY() - row) + Math.abs(cell.getX() - column);
+	}
+
+	/**
+	 * Checks that the found cells and agents are the expected ones, in any
+	 * order.
+	 *
+	 * @return true, if they are the same
+	 */
+	private static boolean sameAsExpected() {
+		return cells.size() == expectedCells.size() && agents.size() == expectedAgents.size()
+				&& new HashSet<GridPoint>(cells).equals(new HashSet<GridPoint>(expectedCells))
+				&& new HashSet<Agent>(agents).equals(new HashSet<Agent>(expectedAgents));
+	}
+
+	public static void main(final String[] args) throws IOException {
+		final Map<String, String> parameters = HeadlessGame.parseNamedParameters(args);
+		final int maxTicks = parameters.containsKey(HeadlessGame.TICKS)
+				? Integer.parseInt(parameters.get(HeadlessGame.TICKS).trim()) : DEFAULT_TICKS;
+		final SimulationEngine engine = HeadlessGame.load(parameters);
+		final Grid grid = engine.getGrid();
+		final int radius = grid.getOptions().getPerception();
+		long checked = 0;
+		long differences = 0;
+		try {
+			int ticks = 0;
+			while (ticks < maxTicks && !engine.isFinished()) {
+				engine.tick();
+				ticks += 1;
+				if (ticks % FLIP_PERIOD == 0) {
+					flipWall(grid);
+				}
+				for (final Agent agent : grid.getAgents()) {
+					if (!agent.isVisible()) {
+						continue;
+					}
+					checked += 1;
+					agent.perceiveAround(expectedCells, expectedAgents);
+					agent.perceiveInRange(1, cells, agents);
+					if (!sameAsExpected()) {
+						differences += 1;
+						System.err.println("Tick " + ticks + ", " + agent.getName()
+								+ ": the range queries at radius 1 differ from the discovery table.");
+					}
+					if (radius > 1) {
+						agent.perceiveInRange(radius, cells, agents);
+						scan(grid, agent, radius);
+						if (!sameAsExpected()) {
+							differences += 1;
+							System.err.println("Tick " + ticks + ", " + agent.getName() + ": the range queries at radius "
+									+ radius + " differ from a scan of the map.");
+						}
+					}
+				}
+			}
+			System.out.println("Ticks: " + ticks + ", perceptions checked: " + checked + ", differences: "
+					+ differences);
+		} finally {
+			engine.close();
+		}
+		if (differences > 0) {
+			System.exit(1);
+		}
+	}
+
+}
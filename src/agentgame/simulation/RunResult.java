@@ -0,0 +1,89 @@
+package agentgame.simulation;
+
+import agentgame.entity.agent.Agent;
+import agentgame.entity.agent.AgentStatistics;
+
+/**
+ * The outcome of one headless run: how long it took and the statistics of
+ * all its agents added up.
+ */
+public final class RunResult {
+
+	/** The map file. */
+	private final String mapFile;
+
+	/** The agent file. */
+	private final String agentFile;
+
+	/** The seed of the run. */
+	private final long seed;
+
+	/** The ticks run. */
+	private final int ticks;
+
+	/** Whether every agent was done before the tick limit. */
+	private final boolean finished;
+
+	/** The wall clock time of the run. */
+	private final long millis;
+
+	/** The statistics of all agents added up. */
+	private final AgentStatistics totals;
+
+	/**
+	 * Instantiates a new run result from a run engine.
+	 *
+	 * @param mapFile
+	 *            the map file
+	 * @param agentFile
+	 *            the agent file
+	 * @param engine
+	 *            the engine, after the run
+	 * @param ticks
+	 *            the ticks run
+	 * @param millis
+	 *            the wall clock time of the run
+	 */
+	public RunResult(final String mapFile, final String agentFile, final SimulationEngine engine, final int ticks,
+			final long millis) {
+		this.mapFile = mapFile;
+		this.agentFile = agentFile;
+		this.seed = engine.getGrid().getSeed();
+		this.ticks = ticks;
+		this.finished = engine.isFinished();
+		this.millis = millis;
+		this.totals = new AgentStatistics();
+		for (final Agent agent : engine.getGrid().getAgents()) {
+			totals.add(agent.getStatistics());
+		}
+	}
+
+	public String getMapFile() {
+		return mapFile;
+	}
+
+	public String getAgentFile() {
+		return agentFile;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getTicks() {
+		return ticks;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+
+	public AgentStatistics getTotals() {
+		return totals;
+	}
+
+}
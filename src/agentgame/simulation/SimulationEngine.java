@@ -0,0 +1,430 @@
+package agentgame.simulation;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import agentgame.entity.MapEntity;
+import agentgame.entity.agent.Agent;
+import agentgame.grid.GameOptions;
+import agentgame.grid.Grid;
+import agentgame.grid.GridStore;
+import agentgame.grid.OccupancyLog;
+import agentgame.grid.PlanningBudget;
+import agentgame.grid.ReservationTable;
+import agentgame.path.search.IndexedBinaryHeap;
+
+/**
+ * Runs the game in fixed steps. A tick lets every agent decide and make its
+ * move, applied to the grid right away, then lets every agent look around
+ * where it stands. Nothing is animated, so the game runs as fast as the
+ * agents can think, with or without a viewer attached to the grid.
+ *
+ * With more than one thread a tick has two phases instead. First every agent
+ * decides its move on a fork/join pool. Nothing changes the cells meanwhile,
+ * so all of them decide on the same state of the map. Then the moves are
+ * made one agent after another, in the order of the agents: the first agent
+ * to claim a cell gets it and the others decide again on the map as it is by
+ * then, so no agent keeps losing the same cell. Agents that found their way
+ * occupied decide again too, the agents before may have moved on. Planning
+ * that depends on the agents before, reservations and a shared planning
+ * budget, keeps deciding in turn.
+ *
+ * Only the agents that can act are run. The agents wait in a queue ordered
+ * by the tick they wake up at, then by their order. An agent that left the
+ * map is dropped. An agent with every cell around it taken, whose decision
+ * made no move and changed nothing, would decide the same again, so it is
+ * parked until one of those cells changes, read from the occupancy log,
+ * which also brings it any new neighbour to learn from. An agent woken
+ * before its turn in the tick still runs in it, on the map as it is by then.
+ * So a tick costs what the active agents do, not what all agents are.
+ *
+ * When the agents share a knowledge blackboard they look around on the pool
+ * too, unless a viewer draws what they learn. They only publish to the
+ * blackboard while looking around and only read it while deciding, so every
+ * agent decides on the same knowledge.
+ */
+public class SimulationEngine {
+
+	/** The fewest agents a decision or inspection task splits further. */
+	private static final int DECIDE_BATCH = 16;
+
+	/** The grid. */
+	private final Grid grid;
+
+	/** Runs the decisions, null when the agents decide in turn. */
+	private final ForkJoinPool pool;
+
+	/** The agents, in their order. */
+	private final List<Agent> agents;
+
+	/** The position of every agent in their order. */
+	private final Map<Agent, Integer> indices;
+
+	/**
+	 * The agents to run by wake-up key, the tick times the agent count plus
+	 * the agent's position.
+	 */
+	private final IndexedBinaryHeap queue;
+
+	/** Whether each agent waits for a cell around it to change. */
+	private final boolean[] parked;
+
+	/** The number of parked agents. */
+	private int parkedCount;
+
+	/**
+	 * Whether boxed in agents may be parked. Cooperative planners reserve
+	 * their cell every tick, so they are never parked.
+	 */
+	private final boolean parking;
+
+	/** The agents that decided at the same time in the current tick, in their order. */
+	private final List<Agent> deciding;
+
+	/** The agents run in the current tick, in their order. */
+	private final List<Agent> running;
+
+	/** The position of the occupancy log read up to. */
+	private long logPosition;
+
+	/** The position of the agent running now, woken agents after it run in the same tick. */
+	private int cursor;
+
+	/** The ticks run so far. */
+	private int time;
+
+	/**
+	 * Instantiates a new simulation engine.
+	 *
+	 * @param grid
+	 *            the grid, already initialised
+	 */
+	public SimulationEngine(final Grid grid) {
+		this.grid = grid;
+		this.time = 0;
+		final GameOptions options = grid.getOptions();
+		if (options.getThreads() > 1 && grid.getReservations() == null && grid.getPlanningBudget() == null) {
+			pool = new ForkJoinPool(options.getThreads());
+		} else {
+			pool = null;
+		}
+		agents = grid.getAgents();
+		indices = new IdentityHashMap<Agent, Integer>();
+		for (int i = 0; i < agents.size(); i++) {
+			indices.put(agents.get(i), i);
+		}
+		queue = new IndexedBinaryHeap(agents.size());
+		parked = new boolean[agents.size()];
+		parking = grid.getReservations() == null;
+		deciding = new ArrayList<Agent>();
+		running = new ArrayList<Agent>();
+		wakeAll();
+	}
+
+	/**
+	 * Runs one tick.
+	 */
+	public void tick() {
+		final ReservationTable reservations = grid.getReservations();
+		if (reservations != null) {
+			reservations.advance();
+		}
+		final PlanningBudget planningBudget = grid.getPlanningBudget();
+		if (planningBudget != null) {
+			planningBudget.startTick(queue.size());
+		}
+		final long end = keyOf(time + 1, 0);
+		deciding.clear();
+		running.clear();
+		if (pool != null) {
+			while (!queue.isEmpty() && queue.peekPriority() < end) {
+				deciding.add(agents.get(queue.poll()));
+			}
+			pool.invoke(new DecideTask(deciding, 0, deciding.size()));
+		}
+		int next = 0;
+		while (true) {
+			final boolean queued = !queue.isEmpty() && queue.peekPriority() < end;
+			final Agent agent;
+			if (next < deciding.size() && (!queued || indices.get(deciding.get(next)) < queue.peek())) {
+				agent = deciding.get(next);
+				next += 1;
+				cursor = indices.get(agent);
+				if (!agent.commitMove()) {
+					agent.decideAgain();
+				}
+			} else if (queued) {
+				cursor = queue.poll();
+				agent = agents.get(cursor);
+				if (planningBudget != null) {
+					planningBudget.nextAgent();
+				}
+				agent.findNextMove();
+			} else {
+				break;
+			}
+			running.add(agent);
+			wakeChanged();
+		}
+		cursor = agents.size();
+		if (pool != null && grid.getBlackboard() != null && !grid.isAttached()) {
+			pool.invoke(new InspectTask(running, 0, running.size()));
+		} else {
+			for (final Agent agent : running) {
+				if (agent.isVisible()) {
+					agent.inspectPerimeter();
+				}
+			}
+		}
+		time += 1;
+		for (final Agent agent : running) {
+			schedule(agent);
+		}
+	}
+
+	/**
+	 * Queues an agent that ran for the next tick, parks it, or drops it if it
+	 * left the map.
+	 *
+	 * @param agent
+	 *            the agent
+	 */
+	private void schedule(final Agent agent) {
+		if (!agent.isVisible()) {
+			return;
+		}
+		final int index = indices.get(agent);
+		if (parking && agent.isBoxedIn()) {
+			parked[index] = true;
+			parkedCount += 1;
+			return;
+		}
+		queue.insert(index, keyOf(time, index));
+	}
+
+	/**
+	 * Wakes the parked agents next to the cells changed since the last call.
+	 */
+	private void wakeChanged() {
+		final OccupancyLog log = grid.getOccupancyLog();
+		final long position = log.getPosition();
+		if (parkedCount == 0) {
+			logPosition = position;
+			return;
+		}
+		if (!log.holdsChangesFrom(logPosition)) {
+			/* Too much changed to tell, every parked agent looks again. */
+			for (int i = 0; i < parked.length; i++) {
+				if (parked[i]) {
+					wake(i);
+				}
+			}
+			logPosition = position;
+			return;
+		}
+		final GridStore store = grid.getStore();
+		for (long at = logPosition; at < position && parkedCount > 0; at++) {
+			final int cell = log.getChange(at);
+			final int row = store.rowOf(cell);
+			final int column = store.columnOf(cell);
+			wakeAt(store, row, column - 1);
+			wakeAt(store, row, column + 1);
+			wakeAt(store, row - 1, column);
+			wakeAt(store, row + 1, column);
+		}
+		logPosition = position;
+	}
+
+	private void wakeAt(final GridStore store, final int row, final int column) {
+		if (!store.contains(row, column)) {
+			return;
+		}
+		final MapEntity occupant = store.getOccupant(store.idOf(row, column));
+		if (!(occupant instanceof Agent)) {
+			return;
+		}
+		final Integer index = indices.get(occupant);
+		if (index != null && parked[index]) {
+			wake(index);
+		}
+	}
+
+	/**
+	 * Queues a parked agent, still in this tick if its turn has not come yet.
+	 *
+	 * @param index
+	 *            the position of the agent
+	 */
+	private void wake(final int index) {
+		parked[index] = false;
+		parkedCount -= 1;
+		queue.insert(index, keyOf(index > cursor ? time : time + 1, index));
+	}
+
+	/**
+	 * Queues every agent still on the map for the current tick.
+	 */
+	private void wakeAll() {
+		queue.clear();
+		for (int i = 0; i < agents.size(); i++) {
+			parked[i] = false;
+			if (agents.get(i).isVisible()) {
+				queue.insert(i, keyOf(time, i));
+			}
+		}
+		parkedCount = 0;
+		cursor = -1;
+		logPosition = grid.getOccupancyLog().getPosition();
+	}
+
+	private long keyOf(final int tick, final int index) {
+		return (long) tick * agents.size() + index;
+	}
+
+	/**
+	 * Runs ticks until every agent is done or the tick limit is reached.
+	 *
+	 * @param maxTicks
+	 *            the tick limit
+	 * @return the ticks run
+	 */
+	public int run(final int maxTicks) {
+		if (maxTicks < 0) {
+			throw new IllegalArgumentException("The tick limit cannot be negative: " + maxTicks);
+		}
+		int ticks = 0;
+		while (ticks < maxTicks && !isFinished()) {
+			tick();
+			ticks += 1;
+		}
+		return ticks;
+	}
+
+	/**
+	 * Checks if every agent is done and has left the map.
+	 *
+	 * @return true, if successful
+	 */
+	public boolean isFinished() {
+		return queue.isEmpty() && parkedCount == 0;
+	}
+
+	/**
+	 * Gets the number of agents waiting for a cell around them to change.
+	 *
+	 * @return the parked agent count
+	 */
+	public int getParkedCount() {
+		return parkedCount;
+	}
+
+	public int getTime() {
+		return time;
+	}
+
+	/**
+	 * Restarts the tick count after the agents were reset, and queues every
+	 * agent again.
+	 */
+	public void resetTime() {
+		time = 0;
+		wakeAll();
+	}
+
+	public Grid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * Stops the decision threads, if any. The engine must not tick after.
+	 */
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Checks if the agents decide their moves on several threads.
+	 *
+	 * @return true, if successful
+	 */
+	public boolean isParallel() {
+		return pool != null;
+	}
+
+	/**
+	 * Lets a range of agents decide, splitting it while it is large.
+	 */
+	private static final class DecideTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Agent> agents;
+
+		private final int from;
+
+		private final int to;
+
+		DecideTask(final List<Agent> agents, final int from, final int to) {
+			this.agents = agents;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= DECIDE_BATCH) {
+				for (int i = from; i < to; i++) {
+					agents.get(i).decideMove();
+				}
+				return;
+			}
+			final int middle = (from + to) >>> 1;
+			invokeAll(new DecideTask(agents, from, middle), new DecideTask(agents, middle, to));
+		}
+
+	}
+
+	/**
+	 * Lets a range of agents on the map look around, splitting it while it is
+	 * large.
+	 */
+	private static final class InspectTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Agent> agents;
+
+		private final int from;
+
+		private final int to;
+
+		InspectTask(final List<Agent> agents, final int from, final int to) {
+			this.agents = agents;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= DECIDE_BATCH) {
+				for (int i = from; i < to; i++) {
+					final Agent agent = agents.get(i);
+					if (agent.isVisible()) {
+						agent.inspectPerimeter();
+					}
+				}
+				return;
+			}
+			final int middle = (from + to) >>> 1;
+			invokeAll(new InspectTask(agents, from, middle), new InspectTask(agents, middle, to));
+		}
+
+	}
+
+}
@@ -3,6 +3,7 @@ package agentgame.window;
 import java.io.File;
 import java.util.List;
 
+import agentgame.grid.GameOptions;
 import agentgame.grid.Grid;
 import agentgame.parser.FileParser;
 import javafx.application.Application;
@@ -44,11 +45,14 @@ public class AgentGame extends Application {
 
 	private File agentFile;
 
+	private GameOptions options;
+
 	@Override
 	public void start(final Stage primaryStage) {
 
 		try {
 
+			options = GameOptions.fromNamedParameters(getParameters().getNamed());
 			createFirstMenu(primaryStage);
 
 			scene = new Scene(buttonPane, SIZE, SIZE);
@@ -82,8 +86,11 @@ public class AgentGame extends Application {
 			scene.setFill(Color.CHOCOLATE);
 			gamePane.getStyleClass().add("pane");
 
-			grid = new Grid(this, mapLines, agentLines);
-			grid.init(scene);
+			grid = new Grid(mapLines, agentLines, options);
+			grid.init();
+			/* To replay the game with --seed=. */
+			System.out.println("Seed: " + grid.getSeed());
+			grid.attach(this, scene);
 
 			createPausedMessage();
 			createCanceledMessage();